@@ -0,0 +1,137 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.AppConfigBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Read, convert and write of a generated corpus of small mp3 files, one tag version per run.
+ * Every invocation starts from the original win1252 content so each file is actually rewritten.
+ * Logging is raised to WARN so the per file messages of a default run are not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OperationsPerInvocation(FileCycleBenchmark.FILES)
+public class FileCycleBenchmark {
+
+    static final int FILES = 32;
+    private static final int PADDING = 256;
+    private static final FieldKey[] FIELDS = {FieldKey.TITLE, FieldKey.ARTIST, FieldKey.ALBUM, FieldKey.COMMENT};
+
+    public enum Version {V1, V23, V24}
+
+    @Param({"V1", "V23", "V24"})
+    Version version;
+
+    private File dir;
+    private File[] files;
+    private byte[][] originals;
+    private FileHandler handler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("id3-jmh").toFile();
+        handler = new FileHandler(new AppConfigBuilder(new String[]{"--file", dir.getPath(), "--no-backup"}).build(),
+                new Win1252Converter(), new Win1252Predicate());
+        // the builder sets the level asked for on the command line, DEBUG by default
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.WARN);
+        final Random random = new Random(FILES);
+        files = new File[FILES];
+        originals = new byte[FILES][];
+        for (int i = 0; i < FILES; i++) {
+            files[i] = new File(dir, i + ".mp3");
+            originals[i] = sample(random);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        for (int i = 0; i < FILES; i++) {
+            Files.write(files[i].toPath(), originals[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public int cycle() {
+        int converted = 0;
+        for (File file : files) {
+            converted += handler.readMp3(file).flatMap(handler::convert).map(mp3 -> {
+                handler.save(mp3);
+                return 1;
+            }).orElse(0);
+        }
+        return converted;
+    }
+
+    private byte[] sample(Random random) throws Exception {
+        AbstractID3v2Tag v2 = null;
+        if (version != Version.V1) {
+            v2 = version == Version.V23 ? new ID3v23Tag() : new ID3v24Tag();
+            fill(v2, random);
+        }
+        final ID3v11Tag v1 = new ID3v11Tag();
+        fill(v1, random);
+        final File tmp = File.createTempFile("sample", ".mp3", dir);
+        try {
+            return Files.readAllBytes(Mp3Samples.write(tmp, v2, PADDING, v1).toPath());
+        } finally {
+            Files.delete(tmp.toPath());
+        }
+    }
+
+    private static void fill(Tag tag, Random random) throws Exception {
+        for (FieldKey key : FIELDS) {
+            tag.setField(key, Win1252Benchmark.sample(random, 24, 0.8));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Conversion and detection of a single field value. A ratio of 0 gives plain ASCII strings,
+ * higher ratios mix in cyrillic letters misread as Windows-1252.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class Win1252Benchmark {
+
+    @Param({"8", "32", "256"})
+    int length;
+
+    @Param({"0", "0.1", "0.5", "1"})
+    double cyrillicRatio;
+
+    private final Win1252Converter converter = new Win1252Converter();
+    private final Win1252Predicate predicate = new Win1252Predicate();
+
+    private String value;
+
+    @Setup
+    public void setUp() {
+        value = sample(new Random(length), length, cyrillicRatio);
+    }
+
+    @Benchmark
+    public String convert() {
+        return converter.apply(value);
+    }
+
+    @Benchmark
+    public boolean detect() {
+        return predicate.test(value);
+    }
+
+    static String sample(Random random, int length, double cyrillicRatio) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextDouble() < cyrillicRatio
+                    ? (char) (Win1252Range.WIN1252_START + random.nextInt(Win1252Range.WIN1252_END - Win1252Range.WIN1252_START + 1))
+                    : (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+}
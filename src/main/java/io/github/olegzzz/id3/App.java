@@ -23,7 +23,9 @@
  */
 package io.github.olegzzz.id3;
 
+import io.github.olegzzz.id3.config.AppConfig;
 import io.github.olegzzz.id3.config.AppConfigBuilder;
+import io.github.olegzzz.id3.handler.CachingConverter;
 import io.github.olegzzz.id3.handler.FileHandler;
 import io.github.olegzzz.id3.handler.Win1252Converter;
 import io.github.olegzzz.id3.handler.Win1252Predicate;
@@ -52,10 +54,23 @@ public class App {
             new HelpFormatter().printHelp("java -jar <app.jar>", options);
         } else {
             try {
-                new FileHandler(new AppConfigBuilder(args).build(), new Win1252Converter(), new Win1252Predicate()).handle();
+                final AppConfig config = new AppConfigBuilder(args).build();
+                if (config.getCacheSize() > 0) {
+                    final CachingConverter converter = new CachingConverter(new Win1252Converter(), config.getCacheSize());
+                    final FileHandler handler = new FileHandler(config, converter, converter.asPredicate());
+                    handler.handle();
+                    if (handler.reports()) {
+                        LOGGER.info("Conversion cache: {}", converter.getStats());
+                    }
+                } else {
+                    new FileHandler(config, new Win1252Converter(), new Win1252Predicate()).handle();
+                }
             } catch (ParseException e) {
                 LOGGER.error("Unable to parse program options", e);
+                LogManager.shutdown();
                 System.exit(-1);
+            } finally {
+                LogManager.shutdown();
             }
         }
 
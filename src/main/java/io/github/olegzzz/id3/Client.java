@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends files to a server started with {@code --serve} and prints what became of each of them. Only the JDK is
+ * loaded, so a call costs little more than starting the JVM and the conversion itself.
+ * <p>
+ * Exits with 1 if any file failed and with 2 if the server could not be reached.
+ */
+public class Client {
+
+    public static final int DEFAULT_PORT = 7465;
+
+    private static final String USAGE = "usage: id3-win1252-utf8-client [--port PORT] FILE... | -";
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            System.exit(run(port, paths, System.out) ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Unable to reach the server on port " + port + ": " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * @param paths files or directories, {@code -} to read them from the standard input one per line
+     * @return true if no file failed
+     */
+    public static boolean run(int port, List<String> paths, PrintStream out) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            final Writer requests = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            // answers come while paths are sent, so they are sent from another thread
+            final IOException[] failure = new IOException[1];
+            final Thread sender = new Thread(() -> {
+                try {
+                    for (String path : paths) {
+                        if ("-".equals(path)) {
+                            final BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                            String line;
+                            while ((line = stdin.readLine()) != null) {
+                                send(requests, line);
+                                requests.flush();
+                            }
+                        } else {
+                            send(requests, path);
+                        }
+                    }
+                    requests.flush();
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }, "id3-client-sender");
+            sender.start();
+            boolean ok = true;
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.println(line);
+                ok &= !line.startsWith("failed\t");
+            }
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return ok;
+        }
+    }
+
+    private static void send(Writer requests, String path) throws IOException {
+        if (!path.isEmpty()) {
+            // the server has its own working directory
+            requests.write(new File(path).getAbsolutePath());
+            requests.write('\n');
+        }
+    }
+}
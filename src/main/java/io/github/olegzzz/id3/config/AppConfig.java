@@ -23,24 +23,111 @@
  */
 package io.github.olegzzz.id3.config;
 
+import java.io.File;
 import java.net.URI;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class AppConfig {
 
     public static final boolean DEFAULT_DRY_RUN = true;
     public static final boolean DEFAULT_NO_BKPS = false;
     public static final boolean DEFAULT_VERBOSE = true;
-
+    public static final boolean DEFAULT_QUIET = false;
+    public static final ExecutorType DEFAULT_EXECUTOR = ExecutorType.FIXED;
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+    public static final BackupMode DEFAULT_BACKUP_MODE = BackupMode.FULL;
+    public static final boolean DEFAULT_RESTORE = false;
+    public static final BackupStrategy DEFAULT_BACKUP_STRATEGY = BackupStrategy.AUTO;
+    public static final Set<String> DEFAULT_FIELDS = Collections.emptySet();
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    public static final int DEFAULT_METRICS_INTERVAL = 10;
+    public static final int DEFAULT_PROGRESS_INTERVAL = 0;
+    public static final boolean DEFAULT_RESUME = false;
+    public static final boolean DEFAULT_FROM0 = false;
+    public static final String STDIN = "-";
+    public static final boolean DEFAULT_WATCH = false;
+    public static final int DEFAULT_DEBOUNCE = 2000;
+    public static final int DEFAULT_SERVE_PORT = 0;
+    public static final boolean DEFAULT_ATOMIC_SAVE = false;
+    public static final FsyncPolicy DEFAULT_FSYNC = FsyncPolicy.OFF;
+    public static final int DEFAULT_FSYNC_BATCH = 100;
+    public static final int DEFAULT_FSYNC_INTERVAL = 5;
+    public static final int DEFAULT_READ_RATE = 0;
+    public static final int DEFAULT_WRITE_RATE = 0;
+    public static final int DEFAULT_FILE_RATE = 0;
+    public static final int DEFAULT_MAX_OPEN = 0;
 
     private boolean noBackups;
     private boolean dryRun;
-    private URI file;
+    private List<URI> files;
+    private String filesFrom;
+    private boolean from0;
+    private boolean watch;
+    private int debounce;
+    private int servePort;
+    private File copyTo;
     private boolean verbose;
+    private boolean quiet;
+    private ExecutorType executor;
+    private int threads;
+    private final Map<Stage, Integer> stageThreads = new EnumMap<>(Stage.class);
+    private int queueSize;
+    private BackupMode backupMode;
+    private boolean restore;
+    private BackupStrategy backupStrategy;
+    private Set<String> fields;
+    private File manifest;
+    private int cacheSize;
+    private File metricsFile;
+    private int metricsInterval;
+    private int progressInterval;
+    private File report;
+    private File journal;
+    private boolean resume;
+    private boolean atomicSave;
+    private FsyncPolicy fsync;
+    private int fsyncBatch;
+    private int fsyncInterval;
+    private int readRate;
+    private int writeRate;
+    private int fileRate;
+    private int maxOpen;
+    private File throttleFile;
 
     AppConfig() {
         this.noBackups = DEFAULT_NO_BKPS;
         this.dryRun = DEFAULT_DRY_RUN;
         this.verbose = DEFAULT_VERBOSE;
+        this.quiet = DEFAULT_QUIET;
+        this.executor = DEFAULT_EXECUTOR;
+        this.threads = DEFAULT_THREADS;
+        this.queueSize = DEFAULT_QUEUE_SIZE;
+        this.backupMode = DEFAULT_BACKUP_MODE;
+        this.restore = DEFAULT_RESTORE;
+        this.backupStrategy = DEFAULT_BACKUP_STRATEGY;
+        this.fields = DEFAULT_FIELDS;
+        this.cacheSize = DEFAULT_CACHE_SIZE;
+        this.metricsInterval = DEFAULT_METRICS_INTERVAL;
+        this.progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        this.resume = DEFAULT_RESUME;
+        this.files = Collections.emptyList();
+        this.from0 = DEFAULT_FROM0;
+        this.watch = DEFAULT_WATCH;
+        this.debounce = DEFAULT_DEBOUNCE;
+        this.servePort = DEFAULT_SERVE_PORT;
+        this.atomicSave = DEFAULT_ATOMIC_SAVE;
+        this.fsync = DEFAULT_FSYNC;
+        this.fsyncBatch = DEFAULT_FSYNC_BATCH;
+        this.fsyncInterval = DEFAULT_FSYNC_INTERVAL;
+        this.readRate = DEFAULT_READ_RATE;
+        this.writeRate = DEFAULT_WRITE_RATE;
+        this.fileRate = DEFAULT_FILE_RATE;
+        this.maxOpen = DEFAULT_MAX_OPEN;
     }
 
     void setNoBackups(boolean noBackups) {
@@ -51,16 +138,23 @@ public class AppConfig {
         this.dryRun = dryRun;
     }
 
-    void setFile(URI file) {
-        this.file = file;
+    void setFiles(List<URI> files) {
+        this.files = files;
     }
 
     public boolean needBackup() {
-        return !dryRun && !noBackups;
+        return !dryRun && !noBackups && copyTo == null;
     }
 
+    /**
+     * @return the first of the files and directories to handle, null if they are listed by {@link #getFilesFrom()}
+     */
     public URI getFile() {
-        return file;
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    public List<URI> getFiles() {
+        return files;
     }
 
     public boolean isNoBackups() {
@@ -78,4 +172,329 @@ public class AppConfig {
     public boolean isVerbose() {
         return verbose;
     }
+
+    void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    public boolean isQuiet() {
+        return quiet;
+    }
+
+    void setExecutor(ExecutorType executor) {
+        this.executor = executor;
+    }
+
+    public ExecutorType getExecutor() {
+        return executor;
+    }
+
+    void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    void setThreads(Stage stage, int threads) {
+        stageThreads.put(stage, threads);
+    }
+
+    public int getThreads(Stage stage) {
+        return stageThreads.getOrDefault(stage, threads);
+    }
+
+    void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    void setBackupMode(BackupMode backupMode) {
+        this.backupMode = backupMode;
+    }
+
+    public BackupMode getBackupMode() {
+        return backupMode;
+    }
+
+    void setRestore(boolean restore) {
+        this.restore = restore;
+    }
+
+    public boolean isRestore() {
+        return restore;
+    }
+
+    void setBackupStrategy(BackupStrategy backupStrategy) {
+        this.backupStrategy = backupStrategy;
+    }
+
+    public BackupStrategy getBackupStrategy() {
+        return backupStrategy;
+    }
+
+    void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @return ID3v2 frame ids to convert, empty means all
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    void setManifest(File manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @return file keeping outcomes between runs or null if there is none
+     */
+    public File getManifest() {
+        return manifest;
+    }
+
+    void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return number of converted values remembered, 0 turns the cache off
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    void setMetricsFile(File metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * @return Prometheus text file metrics are written to or null if there is none
+     */
+    public File getMetricsFile() {
+        return metricsFile;
+    }
+
+    void setMetricsInterval(int metricsInterval) {
+        this.metricsInterval = metricsInterval;
+    }
+
+    /**
+     * @return seconds between writes of the metrics file
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * @return seconds between progress reports, 0 if progress is not reported
+     */
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    void setReport(File report) {
+        this.report = report;
+    }
+
+    /**
+     * @return JSON Lines or CSV file a record of every processed file is written to, or null if there is none
+     */
+    public File getReport() {
+        return report;
+    }
+
+    void setJournal(File journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return write-ahead journal of the run, or null if there is none
+     */
+    public File getJournal() {
+        return journal;
+    }
+
+    void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return whether to continue the run recorded in the journal instead of starting over
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    void setAtomicSave(boolean atomicSave) {
+        this.atomicSave = atomicSave;
+    }
+
+    /**
+     * @return whether files are saved by writing a new file and renaming it over the original
+     */
+    public boolean isAtomicSave() {
+        return atomicSave;
+    }
+
+    void setFsync(FsyncPolicy fsync) {
+        this.fsync = fsync;
+    }
+
+    public FsyncPolicy getFsync() {
+        return fsync;
+    }
+
+    void setFsyncBatch(int fsyncBatch) {
+        this.fsyncBatch = fsyncBatch;
+    }
+
+    /**
+     * @return files synced together by the batch fsync policy
+     */
+    public int getFsyncBatch() {
+        return fsyncBatch;
+    }
+
+    void setFsyncInterval(int fsyncInterval) {
+        this.fsyncInterval = fsyncInterval;
+    }
+
+    /**
+     * @return seconds a file waits for its batch to be synced at most
+     */
+    public int getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    void setFilesFrom(String filesFrom) {
+        this.filesFrom = filesFrom;
+    }
+
+    /**
+     * @return file listing the files and directories to handle, {@link #STDIN} for the standard input, or null
+     */
+    public String getFilesFrom() {
+        return filesFrom;
+    }
+
+    void setFrom0(boolean from0) {
+        this.from0 = from0;
+    }
+
+    /**
+     * @return whether the listed paths are separated by NUL rather than line breaks
+     */
+    public boolean isFrom0() {
+        return from0;
+    }
+
+    void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * @return whether to keep converting files as they are created or modified in the directories until stopped
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    void setDebounce(int debounce) {
+        this.debounce = debounce;
+    }
+
+    /**
+     * @return milliseconds a watched file must stay unchanged before it is converted
+     */
+    public int getDebounce() {
+        return debounce;
+    }
+
+    void setServePort(int servePort) {
+        this.servePort = servePort;
+    }
+
+    /**
+     * @return loopback port files to convert are taken from, 0 if not serving
+     */
+    public int getServePort() {
+        return servePort;
+    }
+
+    void setCopyTo(File copyTo) {
+        this.copyTo = copyTo;
+    }
+
+    /**
+     * @return directory converted copies are written to, leaving the originals untouched, or null to convert in place
+     */
+    public File getCopyTo() {
+        return copyTo;
+    }
+
+    void setReadRate(int readRate) {
+        this.readRate = readRate;
+    }
+
+    /**
+     * @return megabytes per second read from the files, 0 for no limit
+     */
+    public int getReadRate() {
+        return readRate;
+    }
+
+    void setWriteRate(int writeRate) {
+        this.writeRate = writeRate;
+    }
+
+    /**
+     * @return megabytes per second written to the files and their backups, 0 for no limit
+     */
+    public int getWriteRate() {
+        return writeRate;
+    }
+
+    void setFileRate(int fileRate) {
+        this.fileRate = fileRate;
+    }
+
+    /**
+     * @return files started per second, 0 for no limit
+     */
+    public int getFileRate() {
+        return fileRate;
+    }
+
+    void setMaxOpen(int maxOpen) {
+        this.maxOpen = maxOpen;
+    }
+
+    /**
+     * @return files open at once, 0 for no limit
+     */
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    void setThrottleFile(File throttleFile) {
+        this.throttleFile = throttleFile;
+    }
+
+    /**
+     * @return file the limits are taken from while running, or null if they stay as given
+     */
+    public File getThrottleFile() {
+        return throttleFile;
+    }
 }
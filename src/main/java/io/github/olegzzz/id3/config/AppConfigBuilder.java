@@ -23,6 +23,7 @@
  */
 package io.github.olegzzz.id3.config;
 
+import io.github.olegzzz.id3.Client;
 import org.apache.commons.cli.*;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -32,6 +33,14 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static io.github.olegzzz.id3.config.AppConfigBuilder.Opt.*;
@@ -41,11 +50,46 @@ public class AppConfigBuilder {
 
     private static final Logger LOGGER = LogManager.getLogger(AppConfigBuilder.class);
 
+    static final int PROGRESS_INTERVAL = 5;
+
     enum Opt {
         DRY(Option.builder().longOpt("dry-run").hasArg(false).desc("do not actually change files").build()),
         NO_BKP(Option.builder().longOpt("no-backup").desc("do not make a copy of a file before processing").build()),
-        FILE(Option.builder().longOpt("file").desc("single file or root directory for processing").hasArg(true).argName("FILE").numberOfArgs(1).required(true).build()),
-        VERBOSE(new Option("v", "verbose"));
+        FILE(Option.builder().longOpt("file").desc("file or root directory for processing, may be repeated").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        FILES_FROM(Option.builder().longOpt("files-from").desc("process files and directories listed in FILE, one per line, - for standard input").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        SERVE(Option.builder().longOpt("serve").desc("keep running and convert files sent by clients to the loopback port " + Client.DEFAULT_PORT + " or the given one; "
+                + "clients are not authenticated, any local user may have files the server can write converted").hasArg(true).optionalArg(true).argName("PORT").numberOfArgs(1).build()),
+        COPY_TO(Option.builder().longOpt("copy-to").desc("write converted copies of the files into directory DIR keeping their tree, originals are left as they are").hasArg(true).argName("DIR").numberOfArgs(1).build()),
+        FROM0(Option.builder().longOpt("from0").desc("listed paths are separated by NUL, as printed by find -print0").build()),
+        VERBOSE(new Option("v", "verbose")),
+        QUIET(Option.builder("q").longOpt("quiet").desc("log only summaries, warnings and errors").build()),
+        EXECUTOR(Option.builder().longOpt("executor").desc("how files are processed: fixed, virtual or sequential").hasArg(true).argName("TYPE").numberOfArgs(1).build()),
+        THREADS(Option.builder().longOpt("threads").desc("maximum number of files processed concurrently").hasArg(true).argName("N").numberOfArgs(1).build()),
+        STAGE_THREADS(Option.builder().longOpt("stage-threads").desc("workers per stage, e.g. read=4,write=2").hasArg(true).argName("STAGE=N,...").numberOfArgs(1).build()),
+        QUEUE_SIZE(Option.builder().longOpt("queue-size").desc("files buffered between stages").hasArg(true).argName("N").numberOfArgs(1).build()),
+        BACKUP_MODE(Option.builder().longOpt("backup-mode").desc("what a backup keeps: full copy of the file or only its tags").hasArg(true).argName("full|tag").numberOfArgs(1).build()),
+        RESTORE(Option.builder().longOpt("restore").desc("put original tags back from backups instead of converting").build()),
+        BACKUP_STRATEGY(Option.builder().longOpt("backup-strategy").desc("how full backups are made: auto, link, copy or stream").hasArg(true).argName("STRATEGY").numberOfArgs(1).build()),
+        FIELDS(Option.builder().longOpt("fields").desc("ID3v2 frames to convert, e.g. TIT2,TPE1,COMM; all by default").hasArg(true).argName("ID,...").numberOfArgs(1).build()),
+        MANIFEST(Option.builder().longOpt("manifest").desc("file remembering processed files, unchanged ones are skipped next time").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        CACHE_SIZE(Option.builder().longOpt("cache-size").desc("converted values remembered across files, 0 to disable").hasArg(true).argName("N").numberOfArgs(1).build()),
+        METRICS_FILE(Option.builder().longOpt("metrics-file").desc("file metrics are written to in the Prometheus text format").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        METRICS_INTERVAL(Option.builder().longOpt("metrics-interval").desc("seconds between writes of the metrics file").hasArg(true).argName("SECONDS").numberOfArgs(1).build()),
+        PROGRESS(Option.builder().longOpt("progress").desc("report progress of a directory every " + PROGRESS_INTERVAL + " or the given seconds").hasArg(true).optionalArg(true).argName("SECONDS").numberOfArgs(1).build()),
+        REPORT(Option.builder().longOpt("report").desc("write a record of every processed file, as CSV if FILE ends with .csv and JSON Lines otherwise").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        JOURNAL(Option.builder().longOpt("journal").desc("write-ahead journal of the run, needed to resume it").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        RESUME(Option.builder().longOpt("resume").desc("continue an interrupted run from its journal, skipping files already done").build()),
+        ATOMIC_SAVE(Option.builder().longOpt("atomic-save").desc("save a file by writing a new one and renaming it over the original").build()),
+        FSYNC(Option.builder().longOpt("fsync").desc("when saved files are flushed to disk: file, batch or off; file with atomic save, off otherwise").hasArg(true).argName("POLICY").numberOfArgs(1).build()),
+        FSYNC_BATCH(Option.builder().longOpt("fsync-batch").desc("files flushed together by the batch policy; only files saved by rename are left untouched until then").hasArg(true).argName("N").numberOfArgs(1).build()),
+        FSYNC_INTERVAL(Option.builder().longOpt("fsync-interval").desc("seconds a batch is flushed after at most").hasArg(true).argName("SECONDS").numberOfArgs(1).build()),
+        READ_RATE(Option.builder().longOpt("read-rate").desc("megabytes per second read from the files, 0 for no limit").hasArg(true).argName("MB").numberOfArgs(1).build()),
+        WRITE_RATE(Option.builder().longOpt("write-rate").desc("megabytes per second written to the files and their backups, 0 for no limit").hasArg(true).argName("MB").numberOfArgs(1).build()),
+        FILE_RATE(Option.builder().longOpt("file-rate").desc("files started per second, 0 for no limit").hasArg(true).argName("N").numberOfArgs(1).build()),
+        MAX_OPEN(Option.builder().longOpt("max-open").desc("files open at once, 0 for no limit").hasArg(true).argName("N").numberOfArgs(1).build()),
+        THROTTLE_FILE(Option.builder().longOpt("throttle-file").desc("file to take read-rate, write-rate, file-rate and max-open from while running, checked every second").hasArg(true).argName("FILE").numberOfArgs(1).build()),
+        WATCH(Option.builder().longOpt("watch").desc("keep converting files created or modified in the directories until stopped").build()),
+        DEBOUNCE(Option.builder().longOpt("debounce").desc("milliseconds a watched file must stay unchanged before it is converted").hasArg(true).argName("MILLIS").numberOfArgs(1).build());
 
         private final Option opt;
 
@@ -62,7 +106,10 @@ public class AppConfigBuilder {
 
     static {
         options  = new Options();
-        Stream.of(Opt.values()).map(Opt::getOpt).forEach(options::addOption);
+        final OptionGroup targets = new OptionGroup().addOption(FILE.opt).addOption(FILES_FROM.opt).addOption(SERVE.opt);
+        targets.setRequired(true);
+        options.addOptionGroup(targets);
+        Stream.of(Opt.values()).map(Opt::getOpt).filter(o -> !targets.getOptions().contains(o)).forEach(options::addOption);
     }
 
     private CommandLine cmdLine;
@@ -74,34 +121,248 @@ public class AppConfigBuilder {
 
 
     public AppConfig build() {
-        final File target = new File(cmdLine.getOptionValue(FILE.opt.getLongOpt()));
-        if (target.exists() && target.canRead() && target.canWrite()) {
+        final List<File> targets = new ArrayList<>();
+        for (String value : cmdLine.hasOption(FILE.opt.getLongOpt()) ? cmdLine.getOptionValues(FILE.opt.getLongOpt()) : new String[0]) {
+            targets.add(new File(value));
+        }
+        // copies leave the originals as they are, so these only need to be readable
+        final boolean copy = cmdLine.hasOption(COPY_TO.opt.getLongOpt());
+        final File inaccessible = targets.stream().filter(t -> !(t.exists() && t.canRead() && (copy || t.canWrite()))).findFirst().orElse(null);
+        if (inaccessible == null) {
             AppConfig  cfg = new AppConfig();
 
             final boolean isVerbose = cmdLine.hasOption(VERBOSE.opt.getOpt());
+            final boolean isQuiet = cmdLine.hasOption(QUIET.opt.getOpt());
+            if (isVerbose && isQuiet) {
+                throw new IllegalArgumentException("Options verbose and quiet are mutually exclusive");
+            }
 
             LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
             Configuration config = ctx.getConfiguration();
             LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
-            loggerConfig.setLevel(isVerbose ? Level.TRACE : Level.DEBUG);
+            loggerConfig.setLevel(isVerbose ? Level.TRACE : isQuiet ? Level.INFO : Level.DEBUG);
             ctx.updateLoggers();
 
             cfg.setVerbose(isVerbose);
             LOGGER.trace("{}: {}", VERBOSE.opt.getDescription(), cfg.isVerbose());
 
+            cfg.setQuiet(isQuiet);
+            LOGGER.trace("{}: {}", QUIET.opt.getDescription(), cfg.isQuiet());
+
             cfg.setDryRun(cmdLine.hasOption(DRY.opt.getLongOpt()));
             LOGGER.trace("{}: {}", DRY.opt.getDescription(), cfg.isDryRun());
 
-            cfg.setFile(target.toURI());
-            LOGGER.trace("{}: {}", FILE.opt.getDescription(), cfg.getFile());
+            cfg.setFiles(Collections.unmodifiableList(targets.stream().map(File::toURI).collect(Collectors.toList())));
+            LOGGER.trace("{}: {}", FILE.opt.getDescription(), cfg.getFiles());
+
+            cfg.setFilesFrom(cmdLine.getOptionValue(FILES_FROM.opt.getLongOpt()));
+            LOGGER.trace("{}: {}", FILES_FROM.opt.getDescription(), cfg.getFilesFrom());
+
+            cfg.setFrom0(cmdLine.hasOption(FROM0.opt.getLongOpt()));
+            LOGGER.trace("{}: {}", FROM0.opt.getDescription(), cfg.isFrom0());
+
+            if (cmdLine.hasOption(SERVE.opt.getLongOpt())) {
+                final String port = cmdLine.getOptionValue(SERVE.opt.getLongOpt());
+                cfg.setServePort(port == null ? Client.DEFAULT_PORT : parsePositive(port));
+            }
+            LOGGER.trace("{}: {}", SERVE.opt.getDescription(), cfg.getServePort());
+
+            if (copy) {
+                final File copyTo = new File(cmdLine.getOptionValue(COPY_TO.opt.getLongOpt()));
+                final Path dest = copyTo.toPath().toAbsolutePath().normalize();
+                if (targets.isEmpty() || cmdLine.hasOption(RESTORE.opt.getLongOpt())
+                        || targets.stream().anyMatch(t -> dest.startsWith(t.toPath().toAbsolutePath().normalize()))) {
+                    throw new IllegalArgumentException("Option copy-to requires a directory outside of the files and cannot restore");
+                }
+                cfg.setCopyTo(copyTo);
+            }
+            LOGGER.trace("{}: {}", COPY_TO.opt.getDescription(), cfg.getCopyTo());
 
             cfg.setNoBackups(cmdLine.hasOption(NO_BKP.opt.getLongOpt()));
             LOGGER.trace("{}: {}", NO_BKP.opt.getDescription(), cfg.isNoBackups());
 
+            if (cmdLine.hasOption(EXECUTOR.opt.getLongOpt())) {
+                cfg.setExecutor(parseEnum(ExecutorType.class, cmdLine.getOptionValue(EXECUTOR.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", EXECUTOR.opt.getDescription(), cfg.getExecutor());
+
+            if (cmdLine.hasOption(THREADS.opt.getLongOpt())) {
+                cfg.setThreads(parsePositive(cmdLine.getOptionValue(THREADS.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", THREADS.opt.getDescription(), cfg.getThreads());
+
+            if (cmdLine.hasOption(STAGE_THREADS.opt.getLongOpt())) {
+                for (String pair : cmdLine.getOptionValue(STAGE_THREADS.opt.getLongOpt()).split(",")) {
+                    final String[] kv = pair.split("=", 2);
+                    if (kv.length != 2) {
+                        throw new IllegalArgumentException(String.format("Expected STAGE=N but got %s", pair));
+                    }
+                    cfg.setThreads(parseEnum(Stage.class, kv[0].trim()), parsePositive(kv[1].trim()));
+                }
+            }
+            for (Stage stage : Stage.values()) {
+                LOGGER.trace("{} workers: {}", stage, cfg.getThreads(stage));
+            }
+
+            if (cmdLine.hasOption(QUEUE_SIZE.opt.getLongOpt())) {
+                cfg.setQueueSize(parsePositive(cmdLine.getOptionValue(QUEUE_SIZE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", QUEUE_SIZE.opt.getDescription(), cfg.getQueueSize());
+
+            if (cmdLine.hasOption(BACKUP_MODE.opt.getLongOpt())) {
+                cfg.setBackupMode(parseEnum(BackupMode.class, cmdLine.getOptionValue(BACKUP_MODE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", BACKUP_MODE.opt.getDescription(), cfg.getBackupMode());
+
+            if (cmdLine.hasOption(BACKUP_STRATEGY.opt.getLongOpt())) {
+                cfg.setBackupStrategy(parseEnum(BackupStrategy.class, cmdLine.getOptionValue(BACKUP_STRATEGY.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", BACKUP_STRATEGY.opt.getDescription(), cfg.getBackupStrategy());
+
+            if (cmdLine.hasOption(FIELDS.opt.getLongOpt())) {
+                final Set<String> fields = new LinkedHashSet<>();
+                for (String id : cmdLine.getOptionValue(FIELDS.opt.getLongOpt()).split(",")) {
+                    if (!id.trim().isEmpty()) {
+                        fields.add(id.trim().toUpperCase(Locale.ROOT));
+                    }
+                }
+                cfg.setFields(Collections.unmodifiableSet(fields));
+            }
+            LOGGER.trace("{}: {}", FIELDS.opt.getDescription(), cfg.getFields());
+
+            if (cmdLine.hasOption(MANIFEST.opt.getLongOpt())) {
+                cfg.setManifest(new File(cmdLine.getOptionValue(MANIFEST.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", MANIFEST.opt.getDescription(), cfg.getManifest());
+
+            if (cmdLine.hasOption(CACHE_SIZE.opt.getLongOpt())) {
+                cfg.setCacheSize(parseNonNegative(cmdLine.getOptionValue(CACHE_SIZE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", CACHE_SIZE.opt.getDescription(), cfg.getCacheSize());
+
+            if (cmdLine.hasOption(METRICS_FILE.opt.getLongOpt())) {
+                cfg.setMetricsFile(new File(cmdLine.getOptionValue(METRICS_FILE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", METRICS_FILE.opt.getDescription(), cfg.getMetricsFile());
+
+            if (cmdLine.hasOption(METRICS_INTERVAL.opt.getLongOpt())) {
+                cfg.setMetricsInterval(parsePositive(cmdLine.getOptionValue(METRICS_INTERVAL.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", METRICS_INTERVAL.opt.getDescription(), cfg.getMetricsInterval());
+
+            if (cmdLine.hasOption(PROGRESS.opt.getLongOpt())) {
+                final String seconds = cmdLine.getOptionValue(PROGRESS.opt.getLongOpt());
+                cfg.setProgressInterval(seconds == null ? PROGRESS_INTERVAL : parsePositive(seconds));
+            }
+            LOGGER.trace("{}: {}", PROGRESS.opt.getDescription(), cfg.getProgressInterval());
+
+            if (cmdLine.hasOption(REPORT.opt.getLongOpt())) {
+                cfg.setReport(new File(cmdLine.getOptionValue(REPORT.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", REPORT.opt.getDescription(), cfg.getReport());
+
+            if (cmdLine.hasOption(JOURNAL.opt.getLongOpt())) {
+                cfg.setJournal(new File(cmdLine.getOptionValue(JOURNAL.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", JOURNAL.opt.getDescription(), cfg.getJournal());
+
+            if (cmdLine.hasOption(RESUME.opt.getLongOpt())) {
+                if (cfg.getJournal() == null) {
+                    throw new IllegalArgumentException("Option resume requires journal");
+                }
+                cfg.setResume(true);
+            }
+            LOGGER.trace("{}: {}", RESUME.opt.getDescription(), cfg.isResume());
+
+            cfg.setAtomicSave(cmdLine.hasOption(ATOMIC_SAVE.opt.getLongOpt()));
+            LOGGER.trace("{}: {}", ATOMIC_SAVE.opt.getDescription(), cfg.isAtomicSave());
+
+            if (cmdLine.hasOption(FSYNC.opt.getLongOpt())) {
+                cfg.setFsync(parseEnum(FsyncPolicy.class, cmdLine.getOptionValue(FSYNC.opt.getLongOpt())));
+            } else if (cfg.isAtomicSave()) {
+                cfg.setFsync(FsyncPolicy.FILE);
+            }
+            LOGGER.trace("{}: {}", FSYNC.opt.getDescription(), cfg.getFsync());
+
+            if (cmdLine.hasOption(FSYNC_BATCH.opt.getLongOpt())) {
+                cfg.setFsyncBatch(parsePositive(cmdLine.getOptionValue(FSYNC_BATCH.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", FSYNC_BATCH.opt.getDescription(), cfg.getFsyncBatch());
+
+            if (cmdLine.hasOption(FSYNC_INTERVAL.opt.getLongOpt())) {
+                cfg.setFsyncInterval(parsePositive(cmdLine.getOptionValue(FSYNC_INTERVAL.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", FSYNC_INTERVAL.opt.getDescription(), cfg.getFsyncInterval());
+
+            if (cmdLine.hasOption(READ_RATE.opt.getLongOpt())) {
+                cfg.setReadRate(parseNonNegative(cmdLine.getOptionValue(READ_RATE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", READ_RATE.opt.getDescription(), cfg.getReadRate());
+
+            if (cmdLine.hasOption(WRITE_RATE.opt.getLongOpt())) {
+                cfg.setWriteRate(parseNonNegative(cmdLine.getOptionValue(WRITE_RATE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", WRITE_RATE.opt.getDescription(), cfg.getWriteRate());
+
+            if (cmdLine.hasOption(FILE_RATE.opt.getLongOpt())) {
+                cfg.setFileRate(parseNonNegative(cmdLine.getOptionValue(FILE_RATE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", FILE_RATE.opt.getDescription(), cfg.getFileRate());
+
+            if (cmdLine.hasOption(MAX_OPEN.opt.getLongOpt())) {
+                cfg.setMaxOpen(parseNonNegative(cmdLine.getOptionValue(MAX_OPEN.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", MAX_OPEN.opt.getDescription(), cfg.getMaxOpen());
+
+            if (cmdLine.hasOption(THROTTLE_FILE.opt.getLongOpt())) {
+                cfg.setThrottleFile(new File(cmdLine.getOptionValue(THROTTLE_FILE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", THROTTLE_FILE.opt.getDescription(), cfg.getThrottleFile());
+
+            if (cmdLine.hasOption(WATCH.opt.getLongOpt())) {
+                if (targets.isEmpty() || !targets.stream().allMatch(File::isDirectory) || cmdLine.hasOption(RESTORE.opt.getLongOpt())) {
+                    throw new IllegalArgumentException("Option watch requires directories and cannot restore");
+                }
+                cfg.setWatch(true);
+            }
+            LOGGER.trace("{}: {}", WATCH.opt.getDescription(), cfg.isWatch());
+
+            if (cmdLine.hasOption(DEBOUNCE.opt.getLongOpt())) {
+                cfg.setDebounce(parseNonNegative(cmdLine.getOptionValue(DEBOUNCE.opt.getLongOpt())));
+            }
+            LOGGER.trace("{}: {}", DEBOUNCE.opt.getDescription(), cfg.getDebounce());
+
+            cfg.setRestore(cmdLine.hasOption(RESTORE.opt.getLongOpt()));
+            LOGGER.trace("{}: {}", RESTORE.opt.getDescription(), cfg.isRestore());
+
             return cfg;
         } else {
-            throw new IllegalArgumentException(String.format("Location %s is not accessible", target));
+            throw new IllegalArgumentException(String.format("Location %s is not accessible", inaccessible));
+        }
+
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown %s %s", type.getSimpleName(), value), e);
         }
+    }
+
+    private static int parsePositive(String value) {
+        try {
+            final int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Expected a positive number but got %s", value));
+    }
 
+    private static int parseNonNegative(String value) {
+        return "0".equals(value.trim()) ? 0 : parsePositive(value.trim());
     }
 }
@@ -0,0 +1,79 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Remembers converted values, since tracks of an album share artist, album, genre and year.
+ * Like the wrapped converter it returns the value itself when there is nothing to convert, so the same
+ * cache answers the predicate as well: a value needs conversion if another instance is returned.
+ * Long values such as lyrics are rarely repeated and are converted without being cached.
+ */
+public class CachingConverter implements Function<String, String> {
+
+    static final int MAX_LENGTH = 256;
+    // stands for values needing no conversion, so the caller gets its own instance back
+    private static final String CLEAN = new String("");
+
+    private final Function<String, String> converter;
+    private final Cache<String, String> cache;
+
+    /**
+     * @param converter must return the value itself when there is nothing to convert
+     * @param maximumSize number of cached values
+     */
+    public CachingConverter(Function<String, String> converter, long maximumSize) {
+        this.converter = converter;
+        this.cache = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    private String load(String s) {
+        final String converted = converter.apply(s);
+        return converted == s ? CLEAN : converted;
+    }
+
+    @Override
+    public String apply(String s) {
+        if (s.length() > MAX_LENGTH) {
+            return converter.apply(s);
+        }
+        final String converted = cache.get(s, this::load);
+        return converted == CLEAN ? s : converted;
+    }
+
+    public Predicate<String> asPredicate() {
+        return s -> apply(s) != s;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+}
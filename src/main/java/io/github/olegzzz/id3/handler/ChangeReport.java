@@ -0,0 +1,259 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams one record per processed file to a JSON Lines file, or to CSV if the file name ends with {@code .csv}.
+ * Workers put finished records into a lock free queue and wake a single thread, which drains it into a buffered
+ * writer, flushing whenever the queue runs dry after something was written, so workers never wait for the disk.
+ */
+class ChangeReport implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(ChangeReport.class);
+
+    enum Status {
+        CONVERTED, DRY_RUN, CLEAN, SKIPPED, FAILED;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    static final class Entry {
+        final File file;
+        final Status status;
+        final List<FieldChange> changes;
+        final long elapsedNanos;
+
+        Entry(File file, Status status, List<FieldChange> changes, long elapsedNanos) {
+            this.file = file;
+            this.status = status;
+            this.changes = changes;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    private static final class Pending {
+        final long start = System.nanoTime();
+        volatile List<FieldChange> changes = Collections.emptyList();
+    }
+
+    private final boolean csv;
+    private final Writer out;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Map<File, Pending> pending = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private boolean failed;
+
+    ChangeReport(File file) throws IOException {
+        this.csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        this.out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), 1 << 16);
+        if (csv) {
+            out.write("path,status,fields,elapsed_us,changes\n");
+        }
+        this.writer = new Thread(this::drain, "id3-report");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts timing the file.
+     */
+    void started(File file) {
+        pending.put(file, new Pending());
+    }
+
+    void changed(File file, List<FieldChange> changes) {
+        final Pending p = pending.get(file);
+        if (p != null) {
+            p.changes = changes;
+        }
+    }
+
+    /**
+     * Queues the record of the file, it is written later by the report thread.
+     */
+    void finished(File file, Status status) {
+        final Pending p = pending.remove(file);
+        queue.offer(p == null
+                ? new Entry(file, status, Collections.emptyList(), 0)
+                : new Entry(file, status, p.changes, System.nanoTime() - p.start));
+        LockSupport.unpark(writer);
+    }
+
+    private void drain() {
+        boolean written = false;
+        while (true) {
+            final Entry entry = queue.poll();
+            if (entry != null) {
+                write(entry);
+                written = true;
+            } else if (closed) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+            } else {
+                if (written) {
+                    flush();
+                    written = false;
+                }
+                // an entry queued since the poll has unparked the thread already, so park returns at once
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void write(Entry entry) {
+        if (failed) {
+            return;
+        }
+        try {
+            out.write(csv ? csv(entry) : json(entry));
+        } catch (IOException e) {
+            failed = true;
+            LOGGER.error("Unable to write the report, the rest of it is dropped", e);
+        }
+    }
+
+    private void flush() {
+        if (!failed) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                LOGGER.error("Unable to write the report, the rest of it is dropped", e);
+            }
+        }
+    }
+
+    static String json(Entry entry) {
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"path\":");
+        jsonString(sb, entry.file.getPath());
+        sb.append(",\"status\":\"").append(entry.status.label())
+                .append("\",\"fields\":").append(entry.changes.size())
+                .append(",\"elapsed_us\":").append(TimeUnit.NANOSECONDS.toMicros(entry.elapsedNanos))
+                .append(",\"changes\":[");
+        for (int i = 0; i < entry.changes.size(); i++) {
+            final FieldChange change = entry.changes.get(i);
+            sb.append(i == 0 ? "{\"field\":" : ",{\"field\":");
+            jsonString(sb, change.field);
+            sb.append(",\"before\":");
+            jsonString(sb, change.original);
+            sb.append(",\"after\":");
+            jsonString(sb, change.converted);
+            sb.append('}');
+        }
+        return sb.append("]}\n").toString();
+    }
+
+    static String csv(Entry entry) {
+        final StringBuilder changes = new StringBuilder();
+        for (FieldChange change : entry.changes) {
+            changes.append(changes.length() == 0 ? "" : " | ").append(change);
+        }
+        final StringBuilder sb = new StringBuilder(128);
+        csvString(sb, entry.file.getPath());
+        sb.append(',').append(entry.status.label())
+                .append(',').append(entry.changes.size())
+                .append(',').append(TimeUnit.NANOSECONDS.toMicros(entry.elapsedNanos))
+                .append(',');
+        csvString(sb, changes.toString());
+        return sb.append('\n').toString();
+    }
+
+    private static void jsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void csvString(StringBuilder sb, String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            sb.append(s);
+        } else {
+            sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+    }
+
+}
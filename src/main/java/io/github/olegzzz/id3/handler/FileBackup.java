@@ -0,0 +1,163 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.BackupStrategy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Makes a full backup of a file with the cheapest strategy available. {@link BackupStrategy#AUTO} tries
+ * a hard link first, then a {@link FileChannel#transferTo} copy and finally a plain stream copy.
+ * A linked backup shares the inode with the original, so the file must be replaced rather than
+ * modified in place when it is saved. Symbolic links and files with other hard links are therefore
+ * copied instead: replacing them would leave the file they lead to, or share an inode with, as it was.
+ */
+class FileBackup {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileBackup.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BackupStrategy strategy;
+    private final Map<BackupStrategy, LongAdder> stats = new EnumMap<>(BackupStrategy.class);
+
+    FileBackup(BackupStrategy strategy) {
+        this.strategy = strategy;
+        for (BackupStrategy s : BackupStrategy.values()) {
+            stats.put(s, new LongAdder());
+        }
+    }
+
+    /**
+     * @param throttle paid for the bytes copied
+     * @return the strategy that made the backup
+     */
+    BackupStrategy backup(File file, File bkpFile, Throttle throttle) throws IOException {
+        final BackupStrategy used;
+        if (strategy == BackupStrategy.AUTO) {
+            used = auto(file, bkpFile, throttle);
+        } else if (strategy == BackupStrategy.LINK && !linkable(file)) {
+            LOGGER.debug("[{}] is a link or has other links, copied instead", file);
+            used = backup(BackupStrategy.COPY, file, bkpFile, throttle);
+        } else {
+            used = backup(strategy, file, bkpFile, throttle);
+        }
+        stats.get(used).increment();
+        return used;
+    }
+
+    private BackupStrategy auto(File file, File bkpFile, Throttle throttle) throws IOException {
+        final BackupStrategy[] strategies = linkable(file)
+                ? new BackupStrategy[]{BackupStrategy.LINK, BackupStrategy.COPY}
+                : new BackupStrategy[]{BackupStrategy.COPY};
+        for (BackupStrategy s : strategies) {
+            try {
+                return backup(s, file, bkpFile, throttle);
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                LOGGER.trace("Unable to backup [{}] by {}: {}", file, s, e.getMessage());
+            }
+        }
+        return backup(BackupStrategy.STREAM, file, bkpFile, throttle);
+    }
+
+    /**
+     * @return whether the file can be backed up by a hard link and replaced on save
+     */
+    private static boolean linkable(File file) throws IOException {
+        final Path path = file.toPath();
+        if (Files.isSymbolicLink(path)) {
+            return false;
+        }
+        try {
+            return ((Number) Files.getAttribute(path, "unix:nlink")).intValue() <= 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static BackupStrategy backup(BackupStrategy s, File file, File bkpFile, Throttle throttle) throws IOException {
+        switch (s) {
+            case LINK:
+                Files.deleteIfExists(bkpFile.toPath());
+                Files.createLink(bkpFile.toPath(), file.toPath());
+                break;
+            case COPY:
+                transfer(file, bkpFile, throttle);
+                break;
+            case STREAM:
+                stream(file, bkpFile, throttle);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Not a backup strategy: %s", s));
+        }
+        return s;
+    }
+
+    private static void transfer(File file, File bkpFile, Throttle throttle) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(bkpFile.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            throttle.transfer(in, 0, in.size(), out);
+        }
+        bkpFile.setLastModified(file.lastModified());
+    }
+
+    private static void stream(File file, File bkpFile, Throttle throttle) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath());
+             OutputStream out = Files.newOutputStream(bkpFile.toPath())) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                throttle.read(n);
+                throttle.write(n);
+                out.write(buffer, 0, n);
+            }
+        }
+        bkpFile.setLastModified(file.lastModified());
+    }
+
+    Map<BackupStrategy, Long> getStats() {
+        final Map<BackupStrategy, Long> result = new EnumMap<>(BackupStrategy.class);
+        stats.forEach((s, n) -> {
+            if (n.sum() > 0) {
+                result.put(s, n.sum());
+            }
+        });
+        return result;
+    }
+}
@@ -24,68 +24,479 @@
 package io.github.olegzzz.id3.handler;
 
 import io.github.olegzzz.id3.config.AppConfig;
-import org.apache.commons.io.FileUtils;
+import io.github.olegzzz.id3.config.BackupMode;
+import io.github.olegzzz.id3.config.BackupStrategy;
+import io.github.olegzzz.id3.config.ExecutorType;
+import io.github.olegzzz.id3.config.FsyncPolicy;
+import io.github.olegzzz.id3.config.Stage;
+import io.github.olegzzz.id3.metrics.Counter;
+import io.github.olegzzz.id3.metrics.Metrics;
+import io.github.olegzzz.id3.metrics.MetricsReporter;
+import io.github.olegzzz.id3.metrics.ProgressReporter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.exceptions.CannotWriteException;
 import org.jaudiotagger.audio.mp3.MP3File;
-import org.jaudiotagger.tag.FieldDataInvalidException;
-import org.jaudiotagger.tag.FieldKey;
 import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagNotFoundException;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FileHandler {
 
     private static final Logger LOGGER = LogManager.getLogger(FileHandler.class);
+    private static final Syncer UNSYNCED = new Syncer(FsyncPolicy.OFF, 1, 0);
+    private static final int STOP_TIMEOUT = 30;
 
-    private final Predicate<String> win1252Predicate;
-    private final Function<String, String> converter;
+    private final TagConverter tagConverter;
     private final Function<File, String> getBkpPath = (f) -> f.getAbsolutePath() + "~";
 
-    private final Consumer<Stream<File>> chain = (s) -> s
-            .map(this::backup)
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .map(this::readMp3)
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .map(this::convert)
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .forEach(this::save);
-
     private final AppConfig config;
+    private final FileWalker walker = new FileWalker("mp3");
+    private final TagReader tagReader = new TagReader();
+    private final TagWriter tagWriter = new TagWriter();
+    private final TagBackup tagBackup = new TagBackup();
+    private final FileBackup fileBackup;
+    private final Set<File> linked = ConcurrentHashMap.newKeySet();
+    private final Set<File> unchanged = ConcurrentHashMap.newKeySet();
+    private final Path copyTo;
+    private final List<Path> roots;
+    private final Metrics metrics = new Metrics();
+    private Manifest manifest;
+    private ChangeReport report;
+    private Journal journal;
+    private Syncer syncer;
+    private Throttle throttle;
+    private volatile Server server;
+    private volatile Closeable live;
+    private volatile CountDownLatch stopped;
 
     public FileHandler(AppConfig config, Function<String, String> converter, Predicate<String> predicate) {
         this.config = config;
-        this.converter = converter;
-        this.win1252Predicate = predicate;
+        this.tagConverter = new TagConverter(converter, predicate, config.getFields());
+        this.fileBackup = new FileBackup(config.getBackupStrategy());
+        this.copyTo = config.getCopyTo() == null ? null : config.getCopyTo().toPath().toAbsolutePath().normalize();
+        this.roots = config.getFiles().stream().map(u -> Paths.get(u).normalize()).collect(Collectors.toList());
     }
 
     public void handle() {
-        final File target = new File(config.getFile());
-        if (target.isFile()) {
-            chain.accept(Collections.singletonList(target).stream());
+        final File single = single();
+        // a live run shuts logging down from its own hook once it is summed up
+        final boolean live = !config.isRestore() && single == null && (config.isWatch() || config.getServePort() > 0);
+        final Thread logStop = live ? null : new Thread(LogManager::shutdown, "id3-log-stop");
+        if (logStop != null) {
+            Runtime.getRuntime().addShutdownHook(logStop);
+        }
+        try {
+            if (config.isRestore()) {
+                restoreAll(single);
+            } else if (reports()) {
+                try (MetricsReporter ignored = new MetricsReporter(metrics, config.getMetricsFile(), config.getMetricsInterval())) {
+                    convertAll(single);
+                }
+                if (config.needBackup() && config.getBackupMode() == BackupMode.FULL) {
+                    LOGGER.info("Backups made: {}", fileBackup.getStats());
+                }
+            } else {
+                convertAll(single);
+            }
+        } finally {
+            final CountDownLatch done = stopped;
+            if (done != null) {
+                done.countDown();
+            }
+            if (logStop != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(logStop);
+                } catch (IllegalStateException e) {
+                    // stopped by a signal, the hook flushes what was logged
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the run is summed up at its end: metrics exposed and logged, backup and cache stats logged.
+     * Only conversions of directories, lists, watched or served files are, unless a metrics file is asked for or
+     * a JMX agent is started, a single file or a restore has nothing worth it
+     */
+    public boolean reports() {
+        return !config.isRestore() && (single() == null || config.getMetricsFile() != null
+                || System.getProperty("com.sun.management.jmxremote") != null
+                || System.getProperty("com.sun.management.jmxremote.port") != null);
+    }
+
+    /**
+     * @return the file to handle if it is the only one given, null if files come from directories or a list
+     */
+    private File single() {
+        final List<URI> files = config.getFiles();
+        if (config.getFilesFrom() == null && files.size() == 1) {
+            final File file = new File(files.get(0));
+            return file.isFile() ? file : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return mp3 files of the given roots, or of the paths listed in a file or on the standard input
+     */
+    private Stream<File> files() throws IOException {
+        final String filesFrom = config.getFilesFrom();
+        if (filesFrom == null) {
+            return walker.walk(config.getFiles().stream().map(Paths::get).iterator());
+        }
+        if (AppConfig.STDIN.equals(filesFrom)) {
+            return walker.walk(new PathList(new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset())), config.isFrom0()));
+        }
+        final Reader reader = Files.newBufferedReader(Paths.get(filesFrom), Charset.defaultCharset());
+        return walker.walk(new PathList(reader, config.isFrom0())).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close [{}]", filesFrom, e);
+            }
+        });
+    }
+
+    /**
+     * @return files created or modified in the directories
+     */
+    private Stream<File> watch() throws IOException {
+        final Watcher w = new Watcher(config.getFiles().stream().map(Paths::get).collect(Collectors.toList()),
+                "mp3", config.getDebounce());
+        LOGGER.info("Watching {} for new files", config.getFiles());
+        return live(w, w.stream());
+    }
+
+    /**
+     * @return files clients ask for
+     */
+    private Stream<File> serve() throws IOException {
+        final Server s = new Server(config.getServePort(), walker);
+        server = s;
+        return live(s, s.stream());
+    }
+
+    /**
+     * Takes files from the source until the JVM is asked to stop, which then waits for the files already
+     * taken to be done and the run to be summed up.
+     */
+    private Stream<File> live(Closeable source, Stream<File> files) {
+        final CountDownLatch done = new CountDownLatch(1);
+        stopped = done;
+        live = source;
+        final Thread hook = new Thread(() -> {
+            stop();
+            try {
+                if (!done.await(STOP_TIMEOUT, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Files still being converted after {} seconds, stopping anyway", STOP_TIMEOUT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LogManager.shutdown();
+        }, "id3-stop");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return files.onClose(() -> {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // stopped by the hook
+            }
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to stop taking files", e);
+            }
+        });
+    }
+
+    /**
+     * Stops watching or serving, the files already taken are still converted.
+     */
+    void stop() {
+        final Closeable source = live;
+        if (source != null) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to stop taking files", e);
+            }
+        }
+    }
+
+    private void convertAll(File target) {
+        final boolean single = target != null;
+        try (ProgressReporter progress = !single && config.getProgressInterval() > 0 ? new ProgressReporter(metrics, config.getProgressInterval()) : null;
+             ChangeReport r = config.getReport() != null ? new ChangeReport(config.getReport()) : null;
+             Manifest m = config.getManifest() != null ? Manifest.open(config.getManifest().toPath()) : null;
+             Journal j = config.getJournal() != null ? Journal.open(config.getJournal().toPath(), config.isResume()) : null;
+             Syncer sync = new Syncer(config.getFsync(), config.getFsyncBatch(), config.getFsyncInterval());
+             Throttle t = new Throttle(config.getReadRate(), config.getWriteRate(), config.getFileRate(), config.getMaxOpen(), config.getThrottleFile());
+             Stream<File> files = single ? Stream.of(target) : config.isWatch() ? watch() : config.getServePort() > 0 ? serve() : files()) {
+            manifest = m;
+            report = r;
+            journal = j;
+            syncer = sync;
+            throttle = t;
+            Stream<File> source = discovered(files, progress == null ? () -> { } : progress::discoveryDone);
+            if (m != null) {
+                source = source.filter(f -> {
+                    if (m.unchanged(f.toPath())) {
+                        skipped(f);
+                        return false;
+                    }
+                    return true;
+                });
+            }
+            if (j != null) {
+                source = source.filter(f -> {
+                    if (j.isDone(f)) {
+                        skipped(f);
+                        return false;
+                    }
+                    if (j.isInterrupted(f)) {
+                        // the file may be half written, start over from the original
+                        LOGGER.info("[{}] was interrupted, restoring it from backup", f);
+                        if (!restore(f)) {
+                            // converting it again would back the half written file up over the original
+                            record(f, Manifest.Outcome.FAILED, null);
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+            pipeline(single ? ExecutorType.SEQUENTIAL : config.getExecutor()).run(source);
+            if (m != null) {
+                LOGGER.info("Unchanged files skipped: {}, manifest entries: {}", m.getSkipped(), m.size());
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to start converting", e);
+        } finally {
+            manifest = null;
+            report = null;
+            journal = null;
+            syncer = null;
+            throttle = null;
+            server = null;
+            live = null;
+        }
+    }
+
+    /**
+     * Counts files as the source yields them and runs {@code done} once it is exhausted.
+     */
+    private Stream<File> discovered(Stream<File> files, Runnable done) {
+        return Stream.concat(files.peek(f -> metrics.increment(Counter.DISCOVERED)),
+                Stream.of(done).flatMap(r -> {
+                    r.run();
+                    return Stream.<File>empty();
+                }));
+    }
+
+    private Pipeline<File, Void> pipeline(ExecutorType type) {
+        return Pipeline.<File>of(type, config.getQueueSize(), metrics::record)
+                .thenApply(Stage.READ, config.getThreads(Stage.READ), guarded(f -> f, this::readMp3))
+                .thenApply(Stage.CONVERT, config.getThreads(Stage.CONVERT), guarded(MP3File::getFile, this::convert))
+                .thenApply(Stage.BACKUP, config.getThreads(Stage.BACKUP), guarded(MP3File::getFile, this::backup))
+                .thenApply(Stage.WRITE, config.getThreads(Stage.WRITE), guarded(MP3File::getFile, (mp3File) -> {
+                    save(mp3File);
+                    return Optional.<Void>empty();
+                }));
+    }
+
+    /**
+     * Records a file a stage fails on unexpectedly as failed, so nothing waits for its outcome forever.
+     */
+    private <T, R> Function<T, Optional<R>> guarded(Function<T, File> fileOf, Function<T, Optional<R>> stage) {
+        return (item) -> {
+            try {
+                return stage.apply(item);
+            } catch (RuntimeException e) {
+                final File file = fileOf.apply(item);
+                LOGGER.error("Unable to process mp3 file [{}]", file, e);
+                record(file, Manifest.Outcome.FAILED, null);
+                return Optional.empty();
+            }
+        };
+    }
+
+    private void restoreAll(File target) {
+        if (target != null) {
+            restore(target);
         } else {
-            chain.accept(FileUtils.listFiles(target, new String[]{"mp3"}, true).parallelStream());
+            try (Stream<File> files = files();
+                 ProcessingEngine engine = new ProcessingEngine(config.getExecutor(), config.getThreads())) {
+                engine.run(files, this::restore);
+            } catch (IOException e) {
+                LOGGER.error("Unable to open list of files [{}]", config.getFilesFrom(), e);
+            }
+        }
+    }
+
+    /**
+     * @return false if the file has a backup that could not be restored
+     */
+    protected boolean restore(final File file) {
+        final File bkpFile = new File(getBkpPath.apply(file));
+        try {
+            if (tagBackup.hasBackup(file)) {
+                if (config.isDryRun()) {
+                    LOGGER.debug("Dry run. [{}] tags would be restored", file);
+                } else {
+                    tagBackup.restore(file);
+                    LOGGER.debug("[{}] tags restored", file);
+                }
+            } else if (bkpFile.isFile()) {
+                if (config.isDryRun()) {
+                    LOGGER.debug("Dry run. [{}] would be restored from [{}]", file, bkpFile);
+                } else {
+                    Files.move(bkpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    LOGGER.debug("[{}] restored from [{}]", file, bkpFile);
+                }
+            } else {
+                LOGGER.trace("No backup of [{}]", file);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Unable to restore file [{}]", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the backup of the file is the one an interrupted run made of the original, which a
+     * resumed run must not overwrite
+     */
+    private boolean keepsOriginal(final File file, final File bkpFile) {
+        final Journal j = journal;
+        if (j != null && config.isResume() && j.isInterrupted(file) && bkpFile.exists()) {
+            LOGGER.error("[{}] still has the backup made by the interrupted run, not overwriting it", file);
+            return true;
+        }
+        return false;
+    }
+
+    protected Optional<MP3File> backup(final MP3File mp3File) {
+        if (config.needBackup() && config.getBackupMode() == BackupMode.TAG) {
+            if (keepsOriginal(mp3File.getFile(), TagBackup.sidecar(mp3File.getFile()))) {
+                record(mp3File.getFile(), Manifest.Outcome.FAILED, null);
+                return Optional.empty();
+            }
+            try {
+                final Throttle t = throttle();
+                final File sidecar;
+                try (Throttle.Permit ignored = t.open()) {
+                    sidecar = tagBackup.save(mp3File);
+                }
+                t.write(sidecar.length());
+                LOGGER.trace("Tags of [{}] saved to [{}]", mp3File.getFile(), sidecar);
+                metrics.increment(Counter.BACKED_UP);
+                return begin(mp3File);
+            } catch (IOException e) {
+                LOGGER.error("Unable to backup file [{}]", mp3File.getFile(), e);
+                record(mp3File.getFile(), Manifest.Outcome.FAILED, null);
+                return Optional.empty();
+            }
+        }
+        final Optional<MP3File> backedUp = backup(mp3File.getFile()).map((f) -> mp3File);
+        if (!backedUp.isPresent()) {
+            record(mp3File.getFile(), Manifest.Outcome.FAILED, null);
+            return backedUp;
+        }
+        return begin(mp3File);
+    }
+
+    /**
+     * Makes the backup durable and journals that the file is about to be written, so a resumed run knows to
+     * restore it first. Until then the backup may be incomplete and a resumed run makes it again.
+     */
+    private Optional<MP3File> begin(final MP3File mp3File) {
+        final Journal j = journal;
+        if (j == null || config.isDryRun()) {
+            return Optional.of(mp3File);
+        }
+        final File file = mp3File.getFile();
+        try {
+            if (config.needBackup()) {
+                sync(config.getBackupMode() == BackupMode.TAG ? TagBackup.sidecar(file) : new File(getBkpPath.apply(file)));
+            }
+            j.begin(file);
+            return Optional.of(mp3File);
+        } catch (IOException e) {
+            LOGGER.error("Unable to journal file [{}]", file, e);
+            record(file, Manifest.Outcome.FAILED, null);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records the written tags in the tag backup, which is not restored over a file it does not match.
+     */
+    private void seal(final File file) {
+        if (config.needBackup() && config.getBackupMode() == BackupMode.TAG) {
+            try {
+                tagBackup.seal(file);
+            } catch (IOException e) {
+                LOGGER.error("Unable to record the new tags of [{}] in its backup, it cannot be restored", file, e);
+            }
+        }
+    }
+
+    private Throttle throttle() {
+        final Throttle t = throttle;
+        return t != null ? t : Throttle.UNLIMITED;
+    }
+
+    private static void sync(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
         }
     }
 
     protected Optional<File> backup(final File file) {
         if (config.needBackup()) {
             final File bkpFile = new File(getBkpPath.apply(file));
+            if (keepsOriginal(file, bkpFile)) {
+                return Optional.empty();
+            }
             try {
-                FileUtils.copyFile(file, bkpFile);
-                LOGGER.trace("File [{}] saved to [{}]", file, bkpFile);
+                final Throttle t = throttle();
+                final BackupStrategy used;
+                try (Throttle.Permit ignored = t.open()) {
+                    used = fileBackup.backup(file, bkpFile, t);
+                }
+                if (used == BackupStrategy.LINK) {
+                    linked.add(file);
+                }
+                LOGGER.trace("File [{}] saved to [{}] by {}", file, bkpFile, used);
+                metrics.increment(Counter.BACKED_UP);
                 return Optional.of(file);
             } catch (IOException e) {
                 LOGGER.error("Unable to backup file [{}]", file, e);
@@ -98,53 +509,243 @@ public class FileHandler {
     }
 
     protected Optional<MP3File> readMp3(final File file) {
+        final ChangeReport r = report;
+        if (r != null) {
+            r.started(file);
+        }
+        final Throttle t = throttle();
+        t.file();
         try {
-            return Optional.of((MP3File) AudioFileIO.read(file));
+            final MP3File mp3File;
+            try (Throttle.Permit ignored = t.open()) {
+                mp3File = tagReader.read(file);
+            }
+            final long read = tagBytes(mp3File);
+            metrics.increment(Counter.READ);
+            metrics.add(Counter.BYTES_READ, read);
+            t.read(read);
+            return Optional.of(mp3File);
+        } catch (TagNotFoundException e) {
+            if (copyTo != null && !config.isDryRun()) {
+                LOGGER.debug("[{}] has no tags, copied as is", file);
+                copy(file, null, false);
+                return Optional.empty();
+            }
+            LOGGER.debug("[{}] has no tags, nothing to convert", file);
+            record(file, Manifest.Outcome.CLEAN, null);
+            return Optional.empty();
         } catch (Exception e) {
             LOGGER.error("Unable to read mp3 file [{}]", file, e);
+            record(file, Manifest.Outcome.FAILED, null);
             return Optional.empty();
         }
     }
 
     protected void save(final MP3File mp3File) {
         if (!config.isDryRun()) {
+            final File file = mp3File.getFile();
+            if (copyTo != null) {
+                copy(file, mp3File, !unchanged.remove(file));
+                return;
+            }
             try {
-                mp3File.commit();
-                LOGGER.trace("Mp3 saved [{}]", mp3File.getFile().getPath());
-            } catch (CannotWriteException e) {
+                final Throttle t = throttle();
+                final Path staged;
+                final Path target;
+                final long written;
+                try (Throttle.Permit ignored = t.open()) {
+                    final boolean replace = linked.remove(file) || config.isAtomicSave();
+                    if (!replace && tagWriter.patch(mp3File)) {
+                        staged = null;
+                        target = file.toPath();
+                        written = tagBytes(mp3File);
+                        LOGGER.trace("Mp3 saved [{}] in place", file);
+                    } else {
+                        // a symbolic link stays, the file it leads to is replaced
+                        target = file.toPath().toRealPath();
+                        staged = tagWriter.stage(mp3File, target, t);
+                        written = staged.toFile().length();
+                        LOGGER.trace("Mp3 saved [{}] {}", file, replace ? "replaced" : "rewritten");
+                    }
+                }
+                if (staged == null) {
+                    t.write(written);
+                }
+                final Tag tag = mp3File.getTag();
+                (syncer != null ? syncer : UNSYNCED).commit(staged, target, () -> {
+                    seal(file);
+                    metrics.increment(Counter.SAVED);
+                    metrics.add(Counter.BYTES_WRITTEN, written);
+                    record(file, Manifest.Outcome.CONVERTED, tag);
+                }, (e) -> {
+                    LOGGER.error("Unable to save mp3 file [{}]", file, e);
+                    record(file, Manifest.Outcome.FAILED, null);
+                });
+            } catch (IOException | CannotWriteException e) {
                 LOGGER.error("Unable to save mp3 file [{}]", mp3File, e);
+                record(file, Manifest.Outcome.FAILED, null);
             }
+        } else {
+            metrics.increment(Counter.COMPLETED);
+            finished(mp3File.getFile(), ChangeReport.Status.DRY_RUN);
+            done(mp3File.getFile());
         }
     }
 
+    /**
+     * Writes the file into the destination tree, its tags taken from {@code mp3File} if they were converted and
+     * its bytes as they are otherwise. The audio is read from the original once and transferred straight into the copy.
+     */
+    private void copy(final File file, final MP3File mp3File, final boolean converted) {
+        final Path target = destination(file);
+        try {
+            Files.createDirectories(target.getParent());
+            final Throttle t = throttle();
+            final Path staged;
+            try (Throttle.Permit ignored = t.open()) {
+                staged = converted ? tagWriter.stage(mp3File, target, t) : tagWriter.stage(file, target, t);
+            }
+            final long written = staged.toFile().length();
+            metrics.add(Counter.BYTES_READ, converted ? written - tagBytes(mp3File) : written);
+            LOGGER.trace("Mp3 [{}] copied to [{}]", file, target);
+            final Tag tag = mp3File == null ? null : mp3File.getTag();
+            (syncer != null ? syncer : UNSYNCED).commit(staged, target, () -> {
+                metrics.increment(Counter.SAVED);
+                metrics.add(Counter.BYTES_WRITTEN, written);
+                record(file, converted ? Manifest.Outcome.CONVERTED : Manifest.Outcome.CLEAN, tag);
+            }, (e) -> {
+                LOGGER.error("Unable to copy mp3 file [{}] to [{}]", file, target, e);
+                record(file, Manifest.Outcome.FAILED, null);
+            });
+        } catch (IOException | CannotWriteException e) {
+            LOGGER.error("Unable to copy mp3 file [{}] to [{}]", file, target, e);
+            record(file, Manifest.Outcome.FAILED, null);
+        }
+    }
+
+    /**
+     * @return path of the copy of the file: its path below the directory it was found in, or its name if it was given
+     * itself, resolved against the destination
+     */
+    private Path destination(File file) {
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        for (Path root : roots) {
+            if (path.startsWith(root) && !path.equals(root)) {
+                return copyTo.resolve(root.relativize(path));
+            }
+        }
+        return copyTo.resolve(path.getFileName());
+    }
+
     protected Optional<MP3File> convert(final MP3File mp3File) {
-        final Tag tag = mp3File.getTag();
-        final MP3File finalFile = mp3File;
         try {
-            final long cnt = Stream.of(FieldKey.values())
-                    .filter(key -> win1252Predicate.test(tag.getFirst(key)))
-                    .map(key -> {
-                        final String original = tag.getFirst(key);
-                        final String converted = converter.apply(original);
-                        try {
-                            tag.setField(key, converted);
-                            LOGGER.trace("File: [{}] Field: [{}] Value: [{}] Set: [{}]", finalFile.getFile().getPath(), key, original, converted);
-                        } catch (FieldDataInvalidException e) {
-                            LOGGER.error("Unable to set [{}] = [{}]", key, converted, e);
-                        }
-                        return key;
-                    }).count();
+            // one record per file: the changed fields are only collected when they are going to be logged or reported
+            final ChangeReport r = report;
+            final boolean trace = LOGGER.isTraceEnabled();
+            final List<FieldChange> changes = trace || r != null ? new ArrayList<>() : null;
+            final int cnt = tagConverter.convert(mp3File.getTag(), changes);
+            if (r != null) {
+                r.changed(mp3File.getFile(), changes);
+            }
             if (cnt > 0) {
-                LOGGER.debug("[{}] processed, [{}] fields changed", finalFile.getFile().getPath(), cnt);
+                if (trace) {
+                    LOGGER.trace("[{}] processed, [{}] fields changed:{}", mp3File.getFile(), cnt, describe(changes));
+                } else {
+                    LOGGER.debug("[{}] processed, [{}] fields changed", mp3File.getFile(), cnt);
+                }
+                metrics.increment(Counter.CONVERTED);
+                return Optional.of(mp3File);
+            } else if (copyTo != null && !config.isDryRun()) {
+                LOGGER.debug("[{}] no win1252, copied as is", mp3File.getFile());
+                unchanged.add(mp3File.getFile());
+                return Optional.of(mp3File);
             } else {
-                LOGGER.debug("[{}] no win1252, skipped", finalFile.getFile().getPath());
+                LOGGER.debug("[{}] no win1252, skipped", mp3File.getFile());
+                record(mp3File.getFile(), Manifest.Outcome.CLEAN, mp3File.getTag());
+                return Optional.empty();
             }
-
-            return Optional.of(mp3File);
         } catch (Exception e) {
             LOGGER.error("Unable to process mp3 file [{}]", mp3File, e);
+            record(mp3File.getFile(), Manifest.Outcome.FAILED, null);
             return Optional.empty();
         }
     }
 
+    /**
+     * Counts a file that leaves the pipeline and keeps its outcome in the manifest, the report and the journal.
+     */
+    private void record(File file, Manifest.Outcome outcome, Tag tag) {
+        metrics.increment(Counter.COMPLETED);
+        if (outcome == Manifest.Outcome.FAILED) {
+            metrics.increment(Counter.FAILED);
+        } else if (outcome == Manifest.Outcome.CLEAN) {
+            metrics.increment(Counter.SKIPPED);
+        }
+        final Manifest m = manifest;
+        if (m != null) {
+            m.record(file.toPath(), outcome, Manifest.tagHash(tag));
+        }
+        finished(file, ChangeReport.Status.valueOf(outcome.name()));
+        if (outcome != Manifest.Outcome.FAILED) {
+            done(file);
+        }
+    }
+
+    /**
+     * Counts a file the manifest or the journal know to need no work.
+     */
+    private void skipped(File file) {
+        metrics.increment(Counter.SKIPPED);
+        metrics.increment(Counter.COMPLETED);
+        final Server s = server;
+        if (s != null) {
+            s.finished(file, ChangeReport.Status.SKIPPED);
+        }
+    }
+
+    private void finished(File file, ChangeReport.Status status) {
+        final ChangeReport r = report;
+        if (r != null) {
+            r.finished(file, status);
+        }
+        final Server s = server;
+        if (s != null) {
+            s.finished(file, status);
+        }
+    }
+
+    /**
+     * Journals that the file needs no more work, failed files are left to be tried again by a resumed run.
+     */
+    private void done(File file) {
+        final Journal j = journal;
+        if (j != null) {
+            try {
+                j.done(file);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to journal file [{}]", file, e);
+            }
+        }
+    }
+
+    private static String describe(List<FieldChange> changes) {
+        final StringBuilder sb = new StringBuilder();
+        for (FieldChange change : changes) {
+            sb.append(System.lineSeparator()).append("  ").append(change);
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * @return size of the tags at the start and the end of the file, which is all the reader and an in place write touch
+     */
+    private static long tagBytes(MP3File mp3File) {
+        final long start = mp3File.getMP3AudioHeader() == null ? 0 : mp3File.getMP3AudioHeader().getMp3StartByte();
+        return start + (mp3File.hasID3v1Tag() ? TagReader.V1_SIZE : 0);
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,174 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks a directory tree and streams files with the given extension as they are found.
+ * Only the chain of currently open directories is kept in memory; parallel streams are split
+ * into fixed size batches so the heap does not grow with the size of the tree.
+ * <p>
+ * Several roots, directories or files, are walked one after another and are only taken from
+ * their iterator when the previous one is done, so they can be read from a pipe as they come.
+ */
+class FileWalker implements Function<Path, Stream<File>> {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileWalker.class);
+
+    static final int BATCH_SIZE = 256;
+
+    private final String suffix;
+
+    FileWalker(String extension) {
+        this.suffix = "." + extension;
+    }
+
+    @Override
+    public Stream<File> apply(Path root) {
+        return walk(Collections.singleton(root).iterator());
+    }
+
+    Stream<File> walk(Iterator<Path> roots) {
+        final Walk walk = new Walk(roots);
+        return StreamSupport.stream(walk, false).onClose(walk::close);
+    }
+
+    private boolean matches(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(suffix) && Files.isRegularFile(path);
+    }
+
+    private final class Walk implements Spliterator<File>, Closeable {
+
+        private final Deque<DirectoryStream<Path>> open = new ArrayDeque<>();
+        private final Deque<Iterator<Path>> pending = new ArrayDeque<>();
+        private final Iterator<Path> roots;
+
+        Walk(Iterator<Path> roots) {
+            this.roots = roots;
+        }
+
+        private void enter(Path dir) {
+            try {
+                final DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+                open.push(stream);
+                pending.push(stream.iterator());
+            } catch (IOException e) {
+                LOGGER.error("Unable to list directory [{}]", dir, e);
+            }
+        }
+
+        private void leave() {
+            pending.pop();
+            try {
+                open.pop().close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close directory stream", e);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super File> action) {
+            while (!pending.isEmpty() || roots.hasNext()) {
+                if (pending.isEmpty()) {
+                    final Path root = roots.next();
+                    if (matches(root)) {
+                        action.accept(root.toFile());
+                        return true;
+                    } else if (Files.isDirectory(root)) {
+                        enter(root);
+                    } else if (Files.exists(root)) {
+                        LOGGER.debug("Not an mp3 file [{}], skipped", root);
+                    } else {
+                        LOGGER.warn("No such file [{}]", root);
+                    }
+                    continue;
+                }
+                final Iterator<Path> it = pending.peek();
+                if (!it.hasNext()) {
+                    leave();
+                    continue;
+                }
+                final Path path = it.next();
+                if (matches(path)) {
+                    action.accept(path.toFile());
+                    return true;
+                } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    enter(path);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<File> trySplit() {
+            final File[] batch = new File[BATCH_SIZE];
+            int size = 0;
+            for (; size < BATCH_SIZE; size++) {
+                final int i = size;
+                if (!tryAdvance(f -> batch[i] = f)) {
+                    break;
+                }
+            }
+            return size == 0 ? null : Spliterators.spliterator(batch, 0, size, characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+
+        @Override
+        public void close() {
+            while (!pending.isEmpty()) {
+                leave();
+            }
+        }
+    }
+
+}
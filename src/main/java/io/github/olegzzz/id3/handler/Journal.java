@@ -0,0 +1,202 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Write-ahead journal of a conversion run, so an interrupted run can be resumed.
+ * <p>
+ * A {@code B} record is appended once the backup of a file is made and before the file is written, and a
+ * {@code D} record once the file is done with. {@link #begin(File)} returns only when its record is on disk;
+ * threads waiting for it share a single {@link FileChannel#force(boolean)} (group commit), so a bulk run pays
+ * one flush per batch of files rather than per file. {@code D} records are not flushed: losing one only makes
+ * a resumed run redo that file.
+ * <p>
+ * On resume, files with a {@code D} record are skipped. Files begun but not done may have been left half
+ * written, so they are restored from their backup and converted again.
+ */
+class Journal implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Journal.class);
+
+    static final char BEGIN = 'B';
+    static final char DONE = 'D';
+
+    private final FileChannel channel;
+    private final Set<String> done;
+    private final Set<String> begun;
+    private final Object lock = new Object();
+    private long appended;
+    private long durable;
+    private boolean flushing;
+
+    private Journal(FileChannel channel, Set<String> done, Set<String> begun) {
+        this.channel = channel;
+        this.done = done;
+        this.begun = begun;
+    }
+
+    /**
+     * Starts a new journal, or continues the existing one when {@code resume} is set.
+     */
+    static Journal open(Path path, boolean resume) throws IOException {
+        final Set<String> done = new HashSet<>();
+        final Set<String> begun = new HashSet<>();
+        if (resume && Files.isRegularFile(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() < 2 || line.charAt(1) != ' ') {
+                        continue; // torn by the crash
+                    }
+                    final String file = unescape(line.substring(2));
+                    if (line.charAt(0) == DONE) {
+                        done.add(file);
+                        begun.remove(file);
+                    } else if (line.charAt(0) == BEGIN && !done.contains(file)) {
+                        begun.add(file);
+                    }
+                }
+            }
+            LOGGER.info("Resuming from [{}]: {} files done, {} interrupted", path, done.size(), begun.size());
+        }
+        final FileChannel channel = resume
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new Journal(channel, done, begun);
+    }
+
+    /**
+     * @return whether the file was done by the run being resumed
+     */
+    boolean isDone(File file) {
+        return done.contains(file.getAbsolutePath());
+    }
+
+    /**
+     * @return whether the run being resumed may have stopped in the middle of writing the file
+     */
+    boolean isInterrupted(File file) {
+        return begun.contains(file.getAbsolutePath());
+    }
+
+    /**
+     * Records that the file is about to be written and waits until the record is durable.
+     */
+    void begin(File file) throws IOException {
+        final long seq = append(BEGIN, file);
+        final long target;
+        synchronized (lock) {
+            while (durable < seq && flushing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the journal");
+                }
+            }
+            if (durable >= seq) {
+                return;
+            }
+            flushing = true;
+            target = appended;
+        }
+        // records appended while forcing wait for the next flush
+        boolean forced = false;
+        try {
+            channel.force(false);
+            forced = true;
+        } finally {
+            synchronized (lock) {
+                flushing = false;
+                if (forced) {
+                    durable = Math.max(durable, target);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records that the file needs no more work.
+     */
+    void done(File file) throws IOException {
+        append(DONE, file);
+    }
+
+    private long append(char type, File file) throws IOException {
+        final ByteBuffer record = StandardCharsets.UTF_8.encode(type + " " + escape(file.getAbsolutePath()) + "\n");
+        synchronized (lock) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            return ++appended;
+        }
+    }
+
+    static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                sb.append(s.charAt(++i) == 'n' ? '\n' : s.charAt(i));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
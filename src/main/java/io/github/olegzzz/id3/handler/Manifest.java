@@ -0,0 +1,261 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagField;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the outcome of processing every file, so unchanged files are skipped by later runs without being opened.
+ * <p>
+ * Entries live in a memory mapped open addressing hash table, so the file is updated in place as the run goes
+ * and millions of entries cost no heap. A slot is keyed by the hash of the absolute path and holds a hash of
+ * the file key (device and inode where available), size, modification time, a hash of the tag text and the
+ * outcome. The table is rehashed into a file of twice the capacity when it gets three quarters full.
+ */
+class Manifest implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Manifest.class);
+
+    enum Outcome {
+        CONVERTED, CLEAN, FAILED
+    }
+
+    static final int MAGIC = 0x4933464D; // I3FM
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int SLOT_SIZE = 48;
+    static final int MIN_CAPACITY = 1 << 12;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    // slot layout, the path hash is at 0 and an empty slot has it 0
+    private static final int FILE_KEY = 8;
+    private static final int SIZE = 16;
+    private static final int MTIME = 24;
+    private static final int TAG_HASH = 32;
+    private static final int OUTCOME = 40;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int count;
+
+    private final LongAdder skipped = new LongAdder();
+
+    private Manifest(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens an existing manifest or creates an empty one.
+     */
+    static Manifest open(Path path) throws IOException {
+        final Manifest manifest = new Manifest(path);
+        manifest.map(path, MIN_CAPACITY);
+        LOGGER.debug("Manifest [{}] opened with [{}] entries", path, manifest.count);
+        return manifest;
+    }
+
+    private void map(Path file, int initialCapacity) throws IOException {
+        final FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer buffer;
+            if (ch.size() == 0) {
+                buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) initialCapacity * SLOT_SIZE);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(CAPACITY_OFFSET, initialCapacity);
+                buffer.putInt(COUNT_OFFSET, 0);
+            } else {
+                buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+                if (ch.size() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || ch.size() != HEADER_SIZE + (long) buffer.getInt(CAPACITY_OFFSET) * SLOT_SIZE) {
+                    throw new IOException(String.format("%s is not a manifest", file));
+                }
+            }
+            channel = ch;
+            table = buffer;
+            capacity = buffer.getInt(CAPACITY_OFFSET);
+            count = buffer.getInt(COUNT_OFFSET);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the file was converted or found clean and has not been touched since
+     */
+    synchronized boolean unchanged(Path file) {
+        try {
+            final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            final int slot = find(pathHash(file));
+            final boolean unchanged = slot >= 0 && table.getInt(slot + OUTCOME) != Outcome.FAILED.ordinal()
+                    && table.getLong(slot + SIZE) == attrs.size()
+                    && table.getLong(slot + MTIME) == attrs.lastModifiedTime().toMillis()
+                    && table.getLong(slot + FILE_KEY) == fileKeyHash(attrs);
+            if (unchanged) {
+                skipped.increment();
+                LOGGER.trace("[{}] unchanged since the last run, skipped", file);
+            }
+            return unchanged;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to check [{}] against the manifest", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the outcome of processing the file together with its current size and modification time.
+     */
+    synchronized void record(Path file, Outcome outcome, long tagHash) {
+        try {
+            final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if ((count + 1) * 4L > capacity * 3L) {
+                grow();
+            }
+            final long key = pathHash(file);
+            int slot = find(key);
+            if (slot < 0) {
+                slot = -slot - 1;
+                table.putLong(slot, key);
+                table.putInt(COUNT_OFFSET, ++count);
+            }
+            table.putLong(slot + FILE_KEY, fileKeyHash(attrs));
+            table.putLong(slot + SIZE, attrs.size());
+            table.putLong(slot + MTIME, attrs.lastModifiedTime().toMillis());
+            table.putLong(slot + TAG_HASH, tagHash);
+            table.putInt(slot + OUTCOME, outcome.ordinal());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to record [{}] in the manifest", file, e);
+        }
+    }
+
+    /**
+     * @return offset of the slot holding the key, or -(offset + 1) of the empty slot where it belongs
+     */
+    private int find(long key) {
+        final int mask = capacity - 1;
+        for (int i = (int) (key ^ key >>> 32) & mask; ; i = (i + 1) & mask) {
+            final int slot = HEADER_SIZE + i * SLOT_SIZE;
+            final long k = table.getLong(slot);
+            if (k == key) {
+                return slot;
+            } else if (k == 0) {
+                return -slot - 1;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        final MappedByteBuffer old = table;
+        final FileChannel oldChannel = channel;
+        final int oldCapacity = capacity;
+        map(tmp, oldCapacity * 2);
+        for (int i = 0; i < oldCapacity; i++) {
+            final int from = HEADER_SIZE + i * SLOT_SIZE;
+            final long key = old.getLong(from);
+            if (key != 0) {
+                final int to = -find(key) - 1;
+                for (int b = 0; b < SLOT_SIZE; b += 8) {
+                    table.putLong(to + b, old.getLong(from + b));
+                }
+                table.putInt(COUNT_OFFSET, ++count);
+            }
+        }
+        table.force();
+        oldChannel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug("Manifest [{}] grown to [{}] slots", path, capacity);
+    }
+
+    long getSkipped() {
+        return skipped.sum();
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        table.force();
+        channel.close();
+    }
+
+    static long pathHash(Path file) {
+        final long hash = fnv(FNV_OFFSET, file.toAbsolutePath().normalize().toString());
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long fileKeyHash(BasicFileAttributes attrs) {
+        final Object key = attrs.fileKey();
+        return key == null ? 0 : fnv(FNV_OFFSET, key.toString());
+    }
+
+    /**
+     * @return hash of the ids and values of all fields of the tag
+     */
+    static long tagHash(Tag tag) {
+        long hash = FNV_OFFSET;
+        if (tag != null) {
+            for (Iterator<TagField> it = tag.getFields(); it.hasNext(); ) {
+                final TagField field = it.next();
+                hash = fnv(fnv(hash, field.getId()), field.toString());
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String s) {
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
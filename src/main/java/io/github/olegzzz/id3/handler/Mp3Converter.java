@@ -0,0 +1,253 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jaudiotagger.tag.TagException;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v1Tag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.github.olegzzz.id3.handler.TagReader.HEADER_SIZE;
+import static io.github.olegzzz.id3.handler.TagReader.V1_SIZE;
+
+/**
+ * Converts the tags of an mp3 held in memory or read from a stream, for embedding into other applications.
+ * Only the ID3v2 tag at the start and the ID3v1 tag in the last {@value TagReader#V1_SIZE} bytes are parsed
+ * and rewritten; the audio between them is copied as is, and when streaming only a fixed size chunk of it
+ * is held at a time. A converted ID3v2 tag is padded to the size of the original one when it fits, so the
+ * audio stays at the same offset. Tags that cannot be parsed are left as they are, and so are ID3v2 tags
+ * larger than the maximum tag size, since their size comes from the data being converted.
+ * <p>
+ * As on the command line, the ID3v1 tag is only converted when there is no ID3v2 tag. It holds single byte
+ * characters only, so a field whose converted value does not fit them is left as it was.
+ * <p>
+ * Instances are thread safe as long as the given converter and predicate are.
+ */
+public class Mp3Converter {
+
+    private static final Logger LOGGER = LogManager.getLogger(Mp3Converter.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String NAME = "stream";
+
+    /**
+     * Largest ID3v2 tag read into memory unless another maximum is given, far above what cover art needs.
+     */
+    public static final int DEFAULT_MAX_TAG_SIZE = 16 * 1024 * 1024;
+
+    private final TagConverter tagConverter;
+    private final int maxTagSize;
+
+    /**
+     * Converts all fields from Windows-1252 to cyrillic.
+     */
+    public Mp3Converter() {
+        this(new Win1252Converter(), new Win1252Predicate(), Collections.emptySet());
+    }
+
+    /**
+     * @param fields frame ids to convert, all frames if empty
+     */
+    public Mp3Converter(Function<String, String> converter, Predicate<String> predicate, Set<String> fields) {
+        this(converter, predicate, fields, DEFAULT_MAX_TAG_SIZE);
+    }
+
+    /**
+     * @param fields frame ids to convert, all frames if empty
+     * @param maxTagSize size in bytes of the largest ID3v2 tag to convert, larger ones are passed through as is
+     */
+    public Mp3Converter(Function<String, String> converter, Predicate<String> predicate, Set<String> fields, int maxTagSize) {
+        if (maxTagSize < 0) {
+            throw new IllegalArgumentException("Maximum tag size must not be negative: " + maxTagSize);
+        }
+        this.tagConverter = new TagConverter(converter, predicate, fields);
+        this.maxTagSize = maxTagSize;
+    }
+
+    /**
+     * @return the converted mp3, the very same array if nothing was changed
+     */
+    public byte[] convert(byte[] mp3) throws IOException {
+        final ByteBuffer in = ByteBuffer.wrap(mp3);
+        final ByteBuffer out = convert(in);
+        return out == in ? mp3 : out.array();
+    }
+
+    /**
+     * Converts the mp3 between the position and the limit of the buffer, both of which are left as they are.
+     *
+     * @return a new buffer holding the converted mp3, the very same buffer if nothing was changed
+     */
+    public ByteBuffer convert(ByteBuffer mp3) throws IOException {
+        final ByteBuffer src = mp3.slice();
+        final int size = src.remaining();
+        int v2Size = TagReader.v2TagSize(src);
+        if (v2Size > size) {
+            LOGGER.debug("ID3v2 tag of {} bytes does not fit into {} bytes, left as is", v2Size, size);
+            v2Size = 0;
+        }
+        final ByteBuffer v2 = v2Size > 0 && fits(v2Size) ? convertV2(slice(src, 0, v2Size)) : null;
+        final ByteBuffer v1 = v2Size == 0 && size >= V1_SIZE ? convertV1(slice(src, size - V1_SIZE, V1_SIZE)) : null;
+        if (v2 == null && v1 == null) {
+            return mp3;
+        }
+        final int audioStart = v2 != null ? v2Size : 0;
+        final int audioEnd = v1 != null ? size - V1_SIZE : size;
+        final ByteBuffer out = ByteBuffer.allocate((v2 != null ? v2.remaining() : 0) + audioEnd - audioStart + (v1 != null ? V1_SIZE : 0));
+        if (v2 != null) {
+            out.put(v2);
+        }
+        out.put(slice(src, audioStart, audioEnd - audioStart));
+        if (v1 != null) {
+            out.put(v1);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Copies the mp3 from {@code in} to {@code out} converting its tags on the way. The ID3v2 tag is read
+     * whole unless it is larger than the maximum tag size, the audio goes through in chunks of {@value #BUFFER_SIZE} bytes with the last
+     * {@value TagReader#V1_SIZE} held back until the end of the stream tells whether they are an ID3v1 tag.
+     * Neither stream is closed.
+     *
+     * @return true if any tag was changed
+     */
+    public boolean convert(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE + V1_SIZE];
+        int held = read(in, buffer, 0, HEADER_SIZE);
+        boolean changed = false;
+
+        final int v2Size = TagReader.v2TagSize(ByteBuffer.wrap(buffer, 0, held));
+        if (v2Size > 0 && !fits(v2Size)) {
+            // copied through with the audio below, which is left as is since there is no ID3v1 tag to convert
+            out.write(buffer, 0, held);
+            held = 0;
+        } else if (v2Size > 0) {
+            final byte[] tag = Arrays.copyOf(buffer, v2Size);
+            final int body = read(in, tag, HEADER_SIZE, v2Size - HEADER_SIZE);
+            if (body < v2Size - HEADER_SIZE) {
+                LOGGER.debug("Stream ended inside the ID3v2 tag, left as is");
+                out.write(tag, 0, HEADER_SIZE + body);
+                return false;
+            }
+            final ByteBuffer v2 = convertV2(ByteBuffer.wrap(tag));
+            write(out, v2 != null ? v2 : ByteBuffer.wrap(tag));
+            changed = v2 != null;
+            held = 0;
+        }
+
+        int n;
+        while ((n = in.read(buffer, held, buffer.length - held)) >= 0) {
+            held += n;
+            if (held == buffer.length) {
+                out.write(buffer, 0, held - V1_SIZE);
+                System.arraycopy(buffer, held - V1_SIZE, buffer, 0, V1_SIZE);
+                held = V1_SIZE;
+            }
+        }
+
+        final ByteBuffer v1 = v2Size == 0 && held >= V1_SIZE ? convertV1(slice(ByteBuffer.wrap(buffer), held - V1_SIZE, V1_SIZE)) : null;
+        out.write(buffer, 0, v1 != null ? held - V1_SIZE : held);
+        if (v1 != null) {
+            write(out, v1);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean fits(int v2Size) {
+        if (v2Size > maxTagSize) {
+            LOGGER.debug("ID3v2 tag of {} bytes is larger than {} bytes, left as is", v2Size, maxTagSize);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param tag the whole ID3v2 tag starting at index 0
+     * @return the converted tag, null if nothing was changed
+     */
+    private ByteBuffer convertV2(ByteBuffer tag) throws IOException {
+        final int region = tag.remaining();
+        final AbstractID3v2Tag v2;
+        try {
+            v2 = TagReader.parseV2(tag, NAME);
+        } catch (TagException e) {
+            LOGGER.debug("Unable to parse ID3v2 tag, left as is", e);
+            return null;
+        }
+        return tagConverter.convert(v2, null) > 0 ? TagWriter.serialize(v2, region) : null;
+    }
+
+    /**
+     * @param tail the last {@value TagReader#V1_SIZE} bytes starting at index 0
+     * @return the converted tag, null if there is none or nothing was changed
+     */
+    private ByteBuffer convertV1(ByteBuffer tail) {
+        final ID3v1Tag v1 = TagReader.parseV1(tail);
+        if (v1 == null || tagConverter.convert(v1, null) == 0) {
+            return null;
+        }
+        final ByteBuffer converted = TagWriter.serialize(v1, tail);
+        return converted.equals(slice(tail, 0, V1_SIZE)) ? null : converted;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+
+    private static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * @return number of bytes read, less than {@code length} only at the end of the stream
+     */
+    private static int read(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int n = in.read(buffer, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
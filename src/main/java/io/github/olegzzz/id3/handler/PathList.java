@@ -0,0 +1,105 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads paths separated by line breaks or NUL characters, the output of {@code find -print0}, one at a time,
+ * so a list fed through a pipe is processed while it is still being written.
+ */
+class PathList implements Iterator<Path> {
+
+    private static final Logger LOGGER = LogManager.getLogger(PathList.class);
+
+    private final Reader reader;
+    private final char delimiter;
+    private final StringBuilder sb = new StringBuilder();
+    private Path next;
+    private boolean eof;
+
+    /**
+     * @param nul whether paths are separated by NUL rather than line breaks
+     */
+    PathList(Reader reader, boolean nul) {
+        this.reader = reader;
+        this.delimiter = nul ? '\0' : '\n';
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !eof) {
+            next = read();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Path path = next;
+        next = null;
+        return path;
+    }
+
+    /**
+     * @return the next path or null if the entry is empty or not a valid path
+     */
+    private Path read() {
+        sb.setLength(0);
+        try {
+            int c;
+            while ((c = reader.read()) >= 0 && c != delimiter) {
+                sb.append((char) c);
+            }
+            eof = c < 0;
+        } catch (IOException e) {
+            LOGGER.error("Unable to read the list of files", e);
+            eof = true;
+        }
+        if (delimiter == '\n' && sb.length() > 0 && sb.charAt(sb.length() - 1) == '\r') {
+            sb.setLength(sb.length() - 1);
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        try {
+            return Paths.get(sb.toString());
+        } catch (InvalidPathException e) {
+            LOGGER.error("Invalid path [{}] in the list of files", sb, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.ExecutorType;
+import io.github.olegzzz.id3.config.Stage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Chain of stages connected by bounded queues. Every stage runs on its own {@link ProcessingEngine}
+ * with its own number of workers; a full queue blocks the stage feeding it, so a slow stage
+ * throttles everything upstream instead of piling up work in memory. Time spent on every element
+ * by a stage is reported to an optional timer.
+ *
+ * @param <S> type of the source elements
+ * @param <T> type produced by the last stage
+ */
+class Pipeline<S, T> {
+
+    private static final Object END = new Object();
+
+    private final ExecutorType type;
+    private final int queueSize;
+    private final ObjLongConsumer<Stage> timer;
+    private final List<Step> steps;
+
+    private Pipeline(ExecutorType type, int queueSize, ObjLongConsumer<Stage> timer, List<Step> steps) {
+        this.type = type;
+        this.queueSize = queueSize;
+        this.timer = timer;
+        this.steps = steps;
+    }
+
+    static <S> Pipeline<S, S> of(ExecutorType type, int queueSize) {
+        return of(type, queueSize, null);
+    }
+
+    /**
+     * @param timer receives a stage and nanoseconds it took to process an element, may be null
+     */
+    static <S> Pipeline<S, S> of(ExecutorType type, int queueSize, ObjLongConsumer<Stage> timer) {
+        return new Pipeline<>(type, queueSize, timer, Collections.emptyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    <R> Pipeline<S, R> thenApply(Stage stage, int workers, Function<? super T, Optional<R>> fn) {
+        final Function<Object, Optional<Object>> f = (Function<Object, Optional<Object>>) (Function<?, ?>) fn;
+        final List<Step> next = new ArrayList<>(steps);
+        next.add(new Step(stage, workers, timer == null ? f : (item) -> {
+            final long start = System.nanoTime();
+            try {
+                return f.apply(item);
+            } finally {
+                timer.accept(stage, System.nanoTime() - start);
+            }
+        }));
+        return new Pipeline<>(type, queueSize, timer, next);
+    }
+
+    Pipeline<S, Void> thenAccept(Stage stage, int workers, Consumer<? super T> consumer) {
+        return thenApply(stage, workers, (t) -> {
+            consumer.accept(t);
+            return Optional.empty();
+        });
+    }
+
+    void run(Stream<S> source) {
+        if (steps.isEmpty()) {
+            throw new IllegalStateException("Pipeline has no stages");
+        }
+        if (type == ExecutorType.SEQUENTIAL) {
+            try (ProcessingEngine engine = new ProcessingEngine(type, 1)) {
+                engine.run(source, this::runInline);
+            }
+            return;
+        }
+
+        final List<BlockingQueue<Object>> queues = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueSize));
+        }
+        final List<Thread> dispatchers = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            final Step step = steps.get(i);
+            final BlockingQueue<Object> in = queues.get(i);
+            final BlockingQueue<Object> out = i + 1 < queues.size() ? queues.get(i + 1) : null;
+            final Thread dispatcher = new Thread(() -> {
+                try (ProcessingEngine engine = new ProcessingEngine(type, step.workers, "id3-" + step.name())) {
+                    engine.run(drain(in), (item) -> step.fn.apply(item).ifPresent((result) -> {
+                        if (out != null) {
+                            put(out, result);
+                        }
+                    }));
+                } finally {
+                    if (out != null) {
+                        put(out, END);
+                    }
+                }
+            }, "id3-" + step.name() + "-dispatcher");
+            dispatcher.start();
+            dispatchers.add(dispatcher);
+        }
+
+        try {
+            source.forEach((item) -> put(queues.get(0), item));
+        } finally {
+            put(queues.get(0), END);
+        }
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void runInline(Object item) {
+        Optional<Object> current = Optional.of(item);
+        for (Step step : steps) {
+            current = current.flatMap(step.fn);
+        }
+    }
+
+    private static Stream<Object> drain(BlockingQueue<Object> queue) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Object>(Long.MAX_VALUE, Spliterator.NONNULL) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Object> action) {
+                if (done) {
+                    return false;
+                }
+                final Object item = take(queue);
+                if (item == END) {
+                    done = true;
+                    return false;
+                }
+                action.accept(item);
+                return true;
+            }
+        }, false);
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while passing work to the next stage", e);
+        }
+    }
+
+    private static Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for work", e);
+        }
+    }
+
+    private static final class Step {
+        private final Stage stage;
+        private final int workers;
+        private final Function<Object, Optional<Object>> fn;
+
+        Step(Stage stage, int workers, Function<Object, Optional<Object>> fn) {
+            this.stage = stage;
+            this.workers = workers;
+            this.fn = fn;
+        }
+
+        String name() {
+            return stage.name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
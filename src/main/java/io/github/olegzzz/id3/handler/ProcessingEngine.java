@@ -0,0 +1,127 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.ExecutorType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs a task for every element of a stream on a dedicated executor. At most {@code concurrency}
+ * tasks are in flight, the stream is not pulled further until one of them completes.
+ */
+class ProcessingEngine implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProcessingEngine.class);
+
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    ProcessingEngine(ExecutorType type, int concurrency) {
+        this(type, concurrency, "id3-worker");
+    }
+
+    ProcessingEngine(ExecutorType type, int concurrency, String name) {
+        this.concurrency = concurrency;
+        this.executor = type == ExecutorType.SEQUENTIAL ? null : newExecutor(type, concurrency, name);
+    }
+
+    static ExecutorService newExecutor(ExecutorType type, int threads, String name) {
+        switch (type) {
+            case VIRTUAL:
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.warn("Virtual threads are not supported by this JVM, using {} platform threads", threads);
+                    return Executors.newFixedThreadPool(threads, namedFactory(name));
+                }
+            case FIXED:
+                return Executors.newFixedThreadPool(threads, namedFactory(name));
+            default:
+                throw new IllegalArgumentException(String.format("No executor for %s", type));
+        }
+    }
+
+    private static ThreadFactory namedFactory(String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return (r) -> new Thread(r, name + "-" + count.incrementAndGet());
+    }
+
+    <T> void run(Stream<T> items, Consumer<T> task) {
+        if (executor == null) {
+            items.forEach((item) -> runSafely(task, item));
+            return;
+        }
+        final Semaphore permits = new Semaphore(concurrency);
+        try {
+            items.forEach((item) -> {
+                permits.acquireUninterruptibly();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            runSafely(task, item);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            });
+        } finally {
+            permits.acquireUninterruptibly(concurrency);
+            permits.release(concurrency);
+        }
+    }
+
+    private static <T> void runSafely(Consumer<T> task, T item) {
+        try {
+            task.accept(item);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to process [{}]", item, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
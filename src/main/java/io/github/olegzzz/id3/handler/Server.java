@@ -0,0 +1,230 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Accepts files to convert over a loopback socket and streams them into a resident pipeline, so a client pays
+ * for the work on its files and not for starting a JVM.
+ * <p>
+ * A client sends absolute paths of files or directories, one per line in UTF-8, and shuts down its output when
+ * done. For every file the server answers a line with the status and the path, separated by a tab, as soon as the
+ * file is done, and closes the connection after the last one. A file asked for by several clients at once is
+ * converted once and answered to all of them.
+ * <p>
+ * Clients are not authenticated: every local user who can reach the loopback port can have the server convert and
+ * back up any file the account running it can write. Run it as a user that may write only the files
+ * all local users are meant to have converted.
+ */
+class Server implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Server.class);
+    private static final File END = new File("");
+
+    private final ServerSocket socket;
+    private final FileWalker walker;
+    private final BlockingQueue<File> queue = new LinkedBlockingQueue<>();
+    private final Map<File, CompletableFuture<ChangeReport.Status>> waiting = new ConcurrentHashMap<>();
+    private final ExecutorService connections;
+    private volatile boolean closed;
+
+    Server(int port, FileWalker walker) throws IOException {
+        this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.walker = walker;
+        final AtomicInteger count = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool((r) -> {
+            final Thread thread = new Thread(r, "id3-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Thread acceptor = new Thread(this::accept, "id3-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Listening on {}", socket.getLocalSocketAddress());
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return files as clients ask for them, the stream ends when the server is closed
+     */
+    Stream<File> stream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<File>(Long.MAX_VALUE, Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super File> action) {
+                final File file;
+                try {
+                    file = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                if (file == END) {
+                    return false;
+                }
+                action.accept(file);
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Answers the clients waiting for the file.
+     */
+    void finished(File file, ChangeReport.Status status) {
+        final CompletableFuture<ChangeReport.Status> future = waiting.remove(file);
+        if (future != null) {
+            future.complete(status);
+        }
+    }
+
+    private CompletableFuture<ChangeReport.Status> submit(File file) {
+        synchronized (queue) {
+            // nothing is queued behind the end of the stream
+            if (closed) {
+                return CompletableFuture.completedFuture(ChangeReport.Status.FAILED);
+            }
+            return waiting.computeIfAbsent(file, (f) -> {
+                queue.add(f);
+                return new CompletableFuture<>();
+            });
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket client = socket.accept();
+                connections.execute(() -> serve(client));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.error("Unable to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket s = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            final List<CompletableFuture<Void>> answers = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final List<File> files = files(line);
+                if (files.isEmpty()) {
+                    // a missing path fails, an existing one without mp3 files has nothing to do
+                    answer(out, (new File(line).exists() ? ChangeReport.Status.SKIPPED : ChangeReport.Status.FAILED).label(), new File(line));
+                }
+                for (File file : files) {
+                    answers.add(submit(file).thenAccept((status) -> answer(out, status.label(), file)));
+                }
+            }
+            CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).join();
+        } catch (IOException e) {
+            LOGGER.warn("Connection with a client failed", e);
+        }
+    }
+
+    private List<File> files(String path) {
+        try (Stream<File> files = walker.apply(Paths.get(path))) {
+            return files.collect(Collectors.toList());
+        } catch (InvalidPathException e) {
+            LOGGER.warn("Not a path [{}]", path);
+            return Collections.emptyList();
+        }
+    }
+
+    private static void answer(Writer out, String status, File file) {
+        synchronized (out) {
+            try {
+                out.write(status + '\t' + file.getPath() + '\n');
+                out.flush();
+            } catch (SocketException e) {
+                LOGGER.debug("Client gone before [{}] was answered", file);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to answer for [{}]", file, e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting files, those already asked for are still converted and answered.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(END);
+        }
+        try {
+            socket.close();
+        } finally {
+            connections.shutdown();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.FsyncPolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Makes saved files durable according to the {@link FsyncPolicy}. A saved file is either a new file staged next
+ * to the original, to be renamed over it, or the original patched in place.
+ * <p>
+ * With {@link FsyncPolicy#FILE} every file is forced before it is renamed and its directory after. With
+ * {@link FsyncPolicy#BATCH} saved files wait until a batch is full or old enough and are then forced, staged ones
+ * renamed and their directories forced once for the whole batch. The originals of staged files stay untouched
+ * until then, so a crash loses the work of the batch but does not leave such a file half written. Files patched
+ * in place are only forced with the batch: a crash may leave one of them half written, to be restored from its
+ * backup. A batch that stops growing, when files come slowly or the run waits for new ones, is synced by a
+ * background thread once it is old enough. {@link FsyncPolicy#OFF} renames at once and leaves flushing to the
+ * operating system.
+ * <p>
+ * A file is only reported done once it is durable, so the manifest, the report and the journal never get ahead
+ * of the disk.
+ */
+class Syncer implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Syncer.class);
+
+    private final FsyncPolicy policy;
+    private final int batchFiles;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private List<Saved> pending = new ArrayList<>();
+    private long batchStart;
+
+    Syncer(FsyncPolicy policy, int batchFiles, int intervalSeconds) {
+        this.policy = policy;
+        this.batchFiles = batchFiles;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        if (policy == FsyncPolicy.BATCH) {
+            scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+                final Thread thread = new Thread(r, "id3-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushIfDue, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param staged  new content to be renamed over {@code target}, or null if {@code target} was written in place
+     * @param durable run once the file is durable
+     * @param failed  run instead if it could not be made durable
+     */
+    void commit(Path staged, Path target, Runnable durable, Consumer<IOException> failed) {
+        final Saved saved = new Saved(staged, target, durable, failed);
+        if (policy != FsyncPolicy.BATCH) {
+            sync(Collections.singletonList(saved));
+            return;
+        }
+        final List<Saved> due;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                batchStart = System.nanoTime();
+            }
+            pending.add(saved);
+            if (pending.size() < batchFiles && System.nanoTime() - batchStart < intervalNanos) {
+                return;
+            }
+            due = pending;
+            pending = new ArrayList<>();
+        }
+        sync(due);
+    }
+
+    /**
+     * Syncs the files of the current batch.
+     */
+    void flush() {
+        final List<Saved> due;
+        synchronized (this) {
+            due = pending;
+            pending = new ArrayList<>();
+        }
+        if (!due.isEmpty()) {
+            sync(due);
+        }
+    }
+
+    private void flushIfDue() {
+        final List<Saved> due;
+        synchronized (this) {
+            if (pending.isEmpty() || System.nanoTime() - batchStart < intervalNanos) {
+                return;
+            }
+            due = pending;
+            pending = new ArrayList<>();
+        }
+        sync(due);
+    }
+
+    private void sync(List<Saved> batch) {
+        final boolean force = policy != FsyncPolicy.OFF;
+        final List<Saved> synced = new ArrayList<>(batch.size());
+        final Set<Path> dirs = new LinkedHashSet<>();
+        for (Saved saved : batch) {
+            try {
+                if (force) {
+                    force(saved.staged != null ? saved.staged : saved.target);
+                }
+                if (saved.staged != null) {
+                    Files.move(saved.staged, saved.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    dirs.add(saved.target.toAbsolutePath().getParent());
+                }
+                synced.add(saved);
+            } catch (IOException e) {
+                discard(saved.staged);
+                saved.failed.accept(e);
+            }
+        }
+        if (force) {
+            for (Path dir : dirs) {
+                forceDirectory(dir);
+            }
+        }
+        LOGGER.trace("{} of {} files synced", synced.size(), batch.size());
+        for (Saved saved : synced) {
+            saved.durable.run();
+        }
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes a rename durable. Not every platform can open a directory, the rename is then as durable as it gets.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.trace("Unable to sync directory [{}]: {}", dir, e.getMessage());
+        }
+    }
+
+    private static void discard(Path staged) {
+        if (staged != null) {
+            try {
+                Files.deleteIfExists(staged);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete [{}]", staged, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                // a flush still running would otherwise report its batch after the final one
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private static final class Saved {
+        private final Path staged;
+        private final Path target;
+        private final Runnable durable;
+        private final Consumer<IOException> failed;
+
+        private Saved(Path staged, Path target, Runnable durable, Consumer<IOException> failed) {
+            this.staged = staged;
+            this.target = target;
+            this.durable = durable;
+            this.failed = failed;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jaudiotagger.audio.mp3.MP3File;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps only the tag regions of a file in a sidecar next to it: the bytes in front of the audio
+ * (ID3v2 tag with padding) and the trailing ID3v1 tag, together with the path, size, modification
+ * time and a CRC32 of those bytes. Restoring splices the original regions back around the current audio.
+ * <p>
+ * The sidecar also records where the audio of the file starts, how long it is and a CRC32 of the tag
+ * regions around it: as found when the backup is made, and as written once the file is {@link #seal sealed}.
+ * A file that no longer matches them is not restored, since splicing would corrupt whatever it now holds.
+ */
+class TagBackup {
+
+    private static final Logger LOGGER = LogManager.getLogger(TagBackup.class);
+
+    static final String SUFFIX = "~id3";
+
+    private static final int MAGIC = 0x49443342;
+    private static final int VERSION = 2;
+    private static final int STATE_OFFSET = 8;
+    private static final byte[] V1_ID = {'T', 'A', 'G'};
+
+    static File sidecar(File file) {
+        return new File(file.getAbsolutePath() + SUFFIX);
+    }
+
+    File save(MP3File mp3File) throws IOException {
+        final File file = mp3File.getFile();
+        final long audioStart = mp3File.getMP3AudioHeader().getMp3StartByte();
+        final Snapshot snapshot;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final byte[] v2 = read(channel, 0, (int) audioStart);
+            final byte[] v1 = mp3File.getID3v1Tag() != null && size - audioStart >= TagReader.V1_SIZE
+                    ? read(channel, size - TagReader.V1_SIZE, TagReader.V1_SIZE) : new byte[0];
+            snapshot = new Snapshot(file.getAbsolutePath(), size, file.lastModified(), v2, v1, State.of(channel));
+        }
+        final File sidecar = sidecar(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar.toPath())))) {
+            snapshot.write(out);
+        }
+        return sidecar;
+    }
+
+    /**
+     * Records the tags the file was written with, so it can still be restored.
+     */
+    void seal(File file) throws IOException {
+        final State state;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            state = State.of(channel);
+        }
+        try (FileChannel channel = FileChannel.open(sidecar(file).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.wrap(read(channel, 0, STATE_OFFSET));
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a tag backup");
+            }
+            write(channel, STATE_OFFSET, state.bytes());
+        }
+    }
+
+    boolean hasBackup(File file) {
+        return sidecar(file).isFile();
+    }
+
+    void restore(File file) throws IOException {
+        final File sidecar = sidecar(file);
+        final Snapshot snapshot;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar.toPath())))) {
+            snapshot = Snapshot.read(in);
+        }
+        if (!snapshot.path.equals(file.getAbsolutePath())) {
+            LOGGER.warn("Backup [{}] was made for [{}]", sidecar, snapshot.path);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final State state = State.of(channel);
+            if (!state.equals(snapshot.state)) {
+                throw new IOException(String.format("%s does not match its tag backup, audio of %d bytes at %d expected, "
+                                + "%d bytes at %d found", file, snapshot.state.audioLength, snapshot.state.audioStart,
+                        state.audioLength, state.audioStart));
+            }
+            final long size = channel.size();
+            final int v2 = (int) state.audioStart;
+            final long audioEnd = state.audioStart + state.audioLength;
+            final boolean hasV1 = audioEnd < size;
+
+            if (v2 == snapshot.v2.length && hasV1 == (snapshot.v1.length > 0)) {
+                write(channel, 0, snapshot.v2);
+                write(channel, audioEnd, snapshot.v1);
+            } else {
+                final Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+                copyPermissions(file.toPath(), tmp);
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    write(out, 0, snapshot.v2);
+                    out.position(snapshot.v2.length);
+                    long pos = v2;
+                    while (pos < audioEnd) {
+                        pos += channel.transferTo(pos, audioEnd - pos, out);
+                    }
+                    write(out, out.position(), snapshot.v1);
+                } catch (IOException e) {
+                    Files.deleteIfExists(tmp);
+                    throw e;
+                }
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        if (file.length() != snapshot.size) {
+            throw new IOException(String.format("Restored %s has %d bytes, %d expected", file, file.length(), snapshot.size));
+        }
+        file.setLastModified(snapshot.mtime);
+        Files.delete(sidecar.toPath());
+    }
+
+    /**
+     * Copies the permissions, and the owner and group as far as the user is allowed to set them.
+     */
+    static void copyPermissions(Path from, Path to) throws IOException {
+        final PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(from, PosixFileAttributes.class);
+        } catch (UnsupportedOperationException e) {
+            LOGGER.trace("No POSIX permissions to copy from [{}]", from);
+            return;
+        }
+        Files.setPosixFilePermissions(to, attributes.permissions());
+        final PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        try {
+            if (!attributes.owner().equals(view.getOwner())) {
+                view.setOwner(attributes.owner());
+            }
+            if (!attributes.group().equals(view.readAttributes().group())) {
+                view.setGroup(attributes.group());
+            }
+        } catch (FileSystemException e) {
+            LOGGER.debug("Unable to keep the owner and group of [{}]: {}", from, e.getMessage());
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void write(FileChannel channel, long position, byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Where the audio of a file is and a CRC32 of the tag regions around it.
+     */
+    private static final class State {
+        private static final int SIZE = 3 * Long.BYTES;
+
+        private final long audioStart;
+        private final long audioLength;
+        private final long crc;
+
+        State(long audioStart, long audioLength, long crc) {
+            this.audioStart = audioStart;
+            this.audioLength = audioLength;
+            this.crc = crc;
+        }
+
+        static State of(FileChannel channel) throws IOException {
+            final long size = channel.size();
+            final int v2 = TagReader.v2TagSize(channel, ByteBuffer.allocate(TagReader.HEADER_SIZE));
+            if (v2 > size) {
+                throw new IOException(String.format("ID3v2 tag of %d bytes does not fit into %d bytes", v2, size));
+            }
+            final byte[] v1 = size - v2 >= TagReader.V1_SIZE ? read(channel, size - TagReader.V1_SIZE, TagReader.V1_SIZE) : new byte[0];
+            final boolean hasV1 = v1.length > 0 && startsWith(v1, V1_ID);
+            final CRC32 crc = new CRC32();
+            crc.update(read(channel, 0, v2));
+            if (hasV1) {
+                crc.update(v1);
+            }
+            return new State(v2, size - v2 - (hasV1 ? TagReader.V1_SIZE : 0), crc.getValue());
+        }
+
+        byte[] bytes() {
+            return ByteBuffer.allocate(SIZE).putLong(audioStart).putLong(audioLength).putLong(crc).array();
+        }
+
+        static State of(DataInputStream in) throws IOException {
+            return new State(in.readLong(), in.readLong(), in.readLong());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+            final State state = (State) o;
+            return audioStart == state.audioStart && audioLength == state.audioLength && crc == state.crc;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(audioStart, audioLength, crc);
+        }
+    }
+
+    private static final class Snapshot {
+        private final String path;
+        private final long size;
+        private final long mtime;
+        private final byte[] v2;
+        private final byte[] v1;
+        private final State state;
+
+        Snapshot(String path, long size, long mtime, byte[] v2, byte[] v1, State state) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.v2 = v2;
+            this.v1 = v1;
+            this.state = state;
+        }
+
+        long crc() {
+            final CRC32 crc = new CRC32();
+            crc.update(v2);
+            crc.update(v1);
+            return crc.getValue();
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(state.bytes());
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeLong(crc());
+            out.writeInt(v2.length);
+            out.write(v2);
+            out.writeInt(v1.length);
+            out.write(v1);
+        }
+
+        static Snapshot read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a tag backup");
+            }
+            final State state = State.of(in);
+            final String path = in.readUTF();
+            final long size = in.readLong();
+            final long mtime = in.readLong();
+            final long crc = in.readLong();
+            final byte[] v2 = new byte[in.readInt()];
+            in.readFully(v2);
+            final byte[] v1 = new byte[in.readInt()];
+            in.readFully(v1);
+            final Snapshot snapshot = new Snapshot(path, size, mtime, v2, v1, state);
+            if (snapshot.crc() != crc) {
+                throw new IOException(String.format("Tag backup of %s is corrupted", path));
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jaudiotagger.tag.FieldDataInvalidException;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagField;
+import org.jaudiotagger.tag.datatype.AbstractDataType;
+import org.jaudiotagger.tag.datatype.DataTypes;
+import org.jaudiotagger.tag.id3.AbstractID3v2Frame;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.AbstractTagFrameBody;
+import org.jaudiotagger.tag.id3.ID3Frames;
+import org.jaudiotagger.tag.id3.ID3v24Frames;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Converts the text of the frames an ID3v2 tag actually contains: plain and user defined text frames,
+ * comments and lyrics, including their descriptions. Multiple values of a frame are kept null separated
+ * in its text, so they are converted as well. ID3v1 tags only have a few fixed fields which are
+ * converted by their keys.
+ */
+class TagConverter {
+
+    private static final Logger LOGGER = LogManager.getLogger(TagConverter.class);
+
+    private static final String[] TEXT_OBJECTS = {DataTypes.OBJ_TEXT, DataTypes.OBJ_DESCRIPTION, DataTypes.OBJ_LYRICS};
+    private static final FieldKey[] V1_KEYS = {FieldKey.TITLE, FieldKey.ARTIST, FieldKey.ALBUM, FieldKey.COMMENT};
+
+    private final Function<String, String> converter;
+    private final Predicate<String> predicate;
+    private final Set<String> fields;
+
+    /**
+     * @param fields frame ids to convert, all frames if empty
+     */
+    TagConverter(Function<String, String> converter, Predicate<String> predicate, Set<String> fields) {
+        this.converter = converter;
+        this.predicate = predicate;
+        this.fields = fields;
+    }
+
+    /**
+     * @param changes collects the changed fields with their old and new values, may be null
+     * @return number of changed fields
+     */
+    int convert(Tag tag, List<FieldChange> changes) {
+        if (tag instanceof AbstractID3v2Tag) {
+            return convertFrames((AbstractID3v2Tag) tag, changes);
+        } else {
+            return convertKeys(tag, changes);
+        }
+    }
+
+    private int convertFrames(AbstractID3v2Tag tag, List<FieldChange> changes) {
+        int cnt = 0;
+        for (Iterator<TagField> it = tag.getFields(); it.hasNext(); ) {
+            final TagField field = it.next();
+            if (!(field instanceof AbstractID3v2Frame) || !accepts(field.getId())) {
+                continue;
+            }
+            final AbstractTagFrameBody body = ((AbstractID3v2Frame) field).getBody();
+            if (body == null) {
+                continue;
+            }
+            boolean changed = false;
+            for (String identifier : TEXT_OBJECTS) {
+                final AbstractDataType object = body.getObject(identifier);
+                if (object != null && object.getValue() instanceof String) {
+                    final String original = (String) object.getValue();
+                    if (predicate.test(original)) {
+                        final String converted = converter.apply(original);
+                        body.setObjectValue(identifier, converted);
+                        describe(changes, field.getId(), original, converted);
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    private int convertKeys(Tag tag, List<FieldChange> changes) {
+        int cnt = 0;
+        for (FieldKey key : V1_KEYS) {
+            if (!accepts(ID3v24Frames.getInstanceOf().getId3KeyFromGenericKey(key).getFrameId())) {
+                continue;
+            }
+            final String original = tag.getFirst(key);
+            if (predicate.test(original)) {
+                final String converted = converter.apply(original);
+                try {
+                    tag.setField(key, converted);
+                    describe(changes, key.name(), original, converted);
+                    cnt++;
+                } catch (FieldDataInvalidException e) {
+                    LOGGER.error("Unable to set [{}] = [{}]", key, converted, e);
+                }
+            }
+        }
+        return cnt;
+    }
+
+    private static void describe(List<FieldChange> changes, String field, String original, String converted) {
+        if (changes != null) {
+            changes.add(new FieldChange(field, original, converted));
+        }
+    }
+
+    /**
+     * @param id frame id, an ID3v2.2 one is matched by its ID3v2.3 and ID3v2.4 equivalents as fields are given by those
+     */
+    private boolean accepts(String id) {
+        if (fields.isEmpty() || fields.contains(id)) {
+            return true;
+        }
+        final String v23 = ID3Frames.convertv22Tov23.get(id);
+        return v23 != null && (fields.contains(v23) || fields.contains(ID3Frames.convertv23Tov24.get(v23)));
+    }
+
+}
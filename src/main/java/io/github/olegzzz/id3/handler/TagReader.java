@@ -0,0 +1,212 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.audio.exceptions.CannotReadException;
+import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
+import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
+import org.jaudiotagger.audio.mp3.MP3AudioHeader;
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.TagException;
+import org.jaudiotagger.tag.TagNotFoundException;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v1Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads ID3v2 and ID3v1 tags without scanning MPEG audio frames. Only the tag header, the tag itself
+ * and the last 128 bytes of the file are read; the audio is assumed to start right after the ID3v2 tag.
+ */
+class TagReader {
+
+    private static final Logger LOGGER = LogManager.getLogger(TagReader.class);
+
+    static final int HEADER_SIZE = 10;
+    static final int SIZE_OFFSET = 6;
+    static final int FOOTER_SIZE = 10;
+    static final int V1_SIZE = 128;
+
+    private static final byte FLAG_FOOTER = 0x10;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(V1_SIZE));
+
+    MP3File read(File file) throws IOException, TagException, CannotReadException, InvalidAudioFrameException, ReadOnlyFileException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = BUFFER.get();
+            final long size = channel.size();
+
+            final int v2Size = v2TagSize(channel, buffer);
+            AbstractID3v2Tag v2 = null;
+            if (v2Size > 0) {
+                try {
+                    v2 = readV2(channel, v2Size, file.getName());
+                } catch (TagException e) {
+                    LOGGER.debug("Unable to parse ID3v2 tag of [{}] from its header, reading whole file", file, e);
+                    return (MP3File) AudioFileIO.read(file);
+                }
+            }
+            final ID3v1Tag v1 = size - v2Size >= V1_SIZE ? parseV1(channel, size, buffer) : null;
+
+            if (v2 == null && v1 == null) {
+                throw new TagNotFoundException(String.format("No ID3 tag found in %s", file));
+            }
+            return new TagOnlyMP3File(file, v2Size, v2, v1);
+        }
+    }
+
+    /**
+     * @return size of the ID3v2 tag including header and footer, 0 if the file does not start with a tag.
+     * The header is left in {@code buffer}.
+     */
+    static int v2TagSize(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(HEADER_SIZE);
+        return readFully(channel, buffer, 0) ? v2TagSize(buffer) : 0;
+    }
+
+    /**
+     * @return size of the ID3v2 tag whose header starts at index 0 of {@code header}, 0 if it is not a tag header
+     */
+    static int v2TagSize(ByteBuffer header) {
+        if (header.limit() < HEADER_SIZE
+                || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3'
+                || header.get(3) < 2 || header.get(3) > 4) {
+            return 0;
+        }
+        final int body = syncSafe(header, SIZE_OFFSET);
+        final boolean footer = header.get(3) == 4 && (header.get(5) & FLAG_FOOTER) != 0;
+        return HEADER_SIZE + body + (footer ? FOOTER_SIZE : 0);
+    }
+
+    static int syncSafe(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0x7F) << 21 | (buffer.get(index + 1) & 0x7F) << 14
+                | (buffer.get(index + 2) & 0x7F) << 7 | (buffer.get(index + 3) & 0x7F);
+    }
+
+    static void putSyncSafe(ByteBuffer buffer, int index, int value) {
+        buffer.put(index, (byte) (value >> 21 & 0x7F));
+        buffer.put(index + 1, (byte) (value >> 14 & 0x7F));
+        buffer.put(index + 2, (byte) (value >> 7 & 0x7F));
+        buffer.put(index + 3, (byte) (value & 0x7F));
+    }
+
+    private static AbstractID3v2Tag readV2(FileChannel channel, int v2Size, String name) throws IOException, TagException {
+        if (v2Size > channel.size()) {
+            throw new TagException(String.format("ID3v2 tag of %d bytes does not fit into %d bytes", v2Size, channel.size()));
+        }
+        final ByteBuffer tag = ByteBuffer.allocate(v2Size);
+        if (!readFully(channel, tag, 0)) {
+            throw new TagException("File ended inside the ID3v2 tag");
+        }
+        tag.flip();
+        return parseV2(tag, name);
+    }
+
+    /**
+     * @param tag the whole ID3v2 tag, header included, starting at index 0
+     */
+    static AbstractID3v2Tag parseV2(ByteBuffer tag, String name) throws TagException {
+        switch (tag.get(3)) {
+            case 2:
+                return new ID3v22Tag(tag, name);
+            case 3:
+                return new ID3v23Tag(tag, name);
+            default:
+                return new ID3v24Tag(tag, name);
+        }
+    }
+
+    private static ID3v1Tag parseV1(FileChannel channel, long size, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        return readFully(channel, buffer, size - V1_SIZE) ? parseV1(buffer) : null;
+    }
+
+    /**
+     * @param buffer the last {@value #V1_SIZE} bytes of a file, starting at index 0
+     * @return the ID3v1.1 or ID3v1 tag, null if there is none
+     */
+    static ID3v1Tag parseV1(ByteBuffer buffer) {
+        try {
+            final ID3v11Tag tag = new ID3v11Tag();
+            buffer.rewind();
+            tag.read(buffer);
+            return tag;
+        } catch (TagNotFoundException e) {
+            try {
+                final ID3v1Tag tag = new ID3v1Tag();
+                buffer.rewind();
+                tag.read(buffer);
+                return tag;
+            } catch (TagNotFoundException ex) {
+                return null;
+            }
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    /**
+     * An {@link MP3File} whose audio header only knows where the audio starts, enough for
+     * {@link MP3File#commit()} to write the tags back.
+     */
+    private static final class TagOnlyMP3File extends MP3File {
+
+        TagOnlyMP3File(File file, long audioStart, AbstractID3v2Tag v2, ID3v1Tag v1) {
+            this.file = file;
+            this.audioHeader = new MP3AudioHeader() {
+                {
+                    setMp3StartByte(audioStart);
+                }
+            };
+            if (v1 != null) {
+                setID3v1Tag(v1);
+            }
+            if (v2 != null) {
+                setID3v2Tag(v2);
+            }
+            this.tag = v2 != null ? v2 : v1;
+        }
+    }
+}
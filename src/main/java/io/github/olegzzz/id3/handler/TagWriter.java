@@ -0,0 +1,259 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.audio.exceptions.CannotWriteException;
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v1Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes tags back into the file. When the new ID3v2 tag fits into the space the old one occupied
+ * together with its padding, only that region is overwritten; otherwise the file is rewritten by
+ * {@link MP3File#commit()}, or staged next to it to be renamed over it. The ID3v1 tag is laid over the one in
+ * the file, leaving fields that cannot hold their new value as they were.
+ */
+class TagWriter {
+
+    static final String TMP_SUFFIX = ".tmp";
+
+    private static final byte FLAG_EXTENDED = 0x40;
+
+    private static final int V1_TITLE = 3;
+    private static final int V1_ARTIST = 33;
+    private static final int V1_ALBUM = 63;
+    private static final int V1_COMMENT = 97;
+    private static final int V1_TEXT_SIZE = 30;
+    private static final int V11_COMMENT_SIZE = 28;
+
+    /**
+     * @return true if the tags were patched in place, false if the whole file had to be rewritten
+     */
+    boolean write(MP3File mp3File) throws CannotWriteException {
+        if (patch(mp3File)) {
+            return true;
+        }
+        mp3File.commit();
+        return false;
+    }
+
+    /**
+     * Overwrites the tags in place if the new ID3v2 tag fits into the space of the old one.
+     *
+     * @return false if it does not fit, the file is then left as is
+     */
+    boolean patch(MP3File mp3File) throws CannotWriteException {
+        try {
+            final ByteBuffer v2 = inPlaceV2(mp3File);
+            if (v2 == null && mp3File.getID3v2Tag() != null) {
+                return false;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(mp3File.getFile(), "rw")) {
+                if (v2 != null) {
+                    while (v2.hasRemaining()) {
+                        raf.getChannel().write(v2, v2.position());
+                    }
+                }
+                final ID3v1Tag v1 = mp3File.getID3v1Tag();
+                final ByteBuffer v1Bytes = v1 == null ? null : serialize(v1, raf.getChannel(), raf.length());
+                if (v1Bytes != null) {
+                    while (v1Bytes.hasRemaining()) {
+                        raf.getChannel().write(v1Bytes, raf.length() - TagReader.V1_SIZE + v1Bytes.position());
+                    }
+                } else if (v1 != null) {
+                    v1.write(raf);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new CannotWriteException(e);
+        }
+    }
+
+    /**
+     * Writes the tags and the audio of the original file into a new file next to it, leaving the original as is.
+     *
+     * @return the new file, to be renamed over the original
+     */
+    Path stage(MP3File mp3File, Throttle throttle) throws CannotWriteException {
+        return stage(mp3File.getFile(), mp3File.getFile().toPath(), mp3File, throttle);
+    }
+
+    /**
+     * Writes the tags and the audio of the original file into a new file next to {@code target}.
+     *
+     * @return the new file, to be renamed over the target
+     */
+    Path stage(MP3File mp3File, Path target, Throttle throttle) throws CannotWriteException {
+        return stage(mp3File.getFile(), target, mp3File, throttle);
+    }
+
+    /**
+     * Copies the file as is into a new file next to {@code target}.
+     *
+     * @return the new file, to be renamed over the target
+     */
+    Path stage(File file, Path target, Throttle throttle) throws CannotWriteException {
+        return stage(file, target, null, throttle);
+    }
+
+    /**
+     * @param mp3File  tags to write in place of the ones of the file, null to copy it as is
+     * @param throttle paid for everything read and written but the tags read already
+     */
+    private static Path stage(File file, Path target, MP3File mp3File, Throttle throttle) throws CannotWriteException {
+        final long audioStart = mp3File == null ? 0 : mp3File.getMP3AudioHeader().getMp3StartByte();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer v2 = mp3File == null || mp3File.getID3v2Tag() == null ? ByteBuffer.allocate(0) : serialize(mp3File.getID3v2Tag(), audioStart);
+            final long size = in.size();
+            final ID3v1Tag v1 = mp3File == null ? null : mp3File.getID3v1Tag();
+            final long audioEnd = size - (v1 != null && size - audioStart >= TagReader.V1_SIZE ? TagReader.V1_SIZE : 0);
+
+            final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), TMP_SUFFIX);
+            boolean staged = false;
+            try {
+                TagBackup.copyPermissions(file.toPath(), tmp);
+                try (RandomAccessFile raf = new RandomAccessFile(tmp.toFile(), "rw")) {
+                    final FileChannel out = raf.getChannel();
+                    throttle.write(v2.remaining());
+                    while (v2.hasRemaining()) {
+                        out.write(v2);
+                    }
+                    throttle.transfer(in, audioStart, audioEnd - audioStart, out);
+                    if (v1 != null) {
+                        throttle.write(TagReader.V1_SIZE);
+                        final ByteBuffer v1Bytes = audioEnd < size ? serialize(v1, in, size) : null;
+                        if (v1Bytes != null) {
+                            while (v1Bytes.hasRemaining()) {
+                                out.write(v1Bytes);
+                            }
+                        } else {
+                            v1.write(raf);
+                        }
+                    }
+                }
+                staged = true;
+                return tmp;
+            } finally {
+                if (!staged) {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException e) {
+            throw new CannotWriteException(e);
+        }
+    }
+
+    /**
+     * @return the serialized ID3v2 tag padded to the size of the existing tag region, null if it does not fit
+     */
+    static ByteBuffer inPlaceV2(MP3File mp3File) throws IOException {
+        final AbstractID3v2Tag tag = mp3File.getID3v2Tag();
+        if (tag == null) {
+            return null;
+        }
+        final ByteBuffer buffer = serialize(tag, mp3File.getMP3AudioHeader().getMp3StartByte());
+        return buffer.remaining() == mp3File.getMP3AudioHeader().getMp3StartByte() ? buffer : null;
+    }
+
+    /**
+     * @return the serialized tag padded to {@code region} bytes, or without padding if it does not fit
+     */
+    static ByteBuffer serialize(AbstractID3v2Tag tag, long region) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(region, Integer.MAX_VALUE));
+        tag.write(Channels.newChannel(out));
+        final byte[] bytes = out.toByteArray();
+        if (bytes.length > region || (bytes[5] & FLAG_EXTENDED) != 0) {
+            return ByteBuffer.wrap(bytes);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) region);
+        buffer.put(bytes);
+        TagReader.putSyncSafe(buffer, TagReader.SIZE_OFFSET, (int) region - TagReader.HEADER_SIZE);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Lays the text fields of {@code tag} over a copy of the ID3v1 tag it was read from, the way
+     * {@link ID3v1Tag#write(RandomAccessFile)} would, without needing a file to write to. Unlike it, fields
+     * that do not fit single bytes are left as they were rather than cut to their low bytes.
+     *
+     * @param original the {@value TagReader#V1_SIZE} bytes the tag was read from, starting at index 0
+     */
+    static ByteBuffer serialize(ID3v1Tag tag, ByteBuffer original) {
+        final ByteBuffer buffer = ByteBuffer.allocate(TagReader.V1_SIZE);
+        buffer.put((ByteBuffer) original.duplicate().clear().limit(TagReader.V1_SIZE));
+        putV1(buffer, V1_TITLE, V1_TEXT_SIZE, tag.getFirst(FieldKey.TITLE));
+        putV1(buffer, V1_ARTIST, V1_TEXT_SIZE, tag.getFirst(FieldKey.ARTIST));
+        putV1(buffer, V1_ALBUM, V1_TEXT_SIZE, tag.getFirst(FieldKey.ALBUM));
+        putV1(buffer, V1_COMMENT, tag instanceof ID3v11Tag ? V11_COMMENT_SIZE : V1_TEXT_SIZE, tag.getFirst(FieldKey.COMMENT));
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Serializes the tag over the ID3v1 tag at the end of {@code channel}.
+     *
+     * @return null if the file does not end with an ID3v1 tag
+     */
+    private static ByteBuffer serialize(ID3v1Tag tag, FileChannel channel, long size) throws IOException {
+        if (size < TagReader.V1_SIZE) {
+            return null;
+        }
+        final ByteBuffer original = ByteBuffer.allocate(TagReader.V1_SIZE);
+        while (original.hasRemaining()) {
+            if (channel.read(original, size - TagReader.V1_SIZE + original.position()) < 0) {
+                return null;
+            }
+        }
+        return TagReader.parseV1(original) == null ? null : serialize(tag, original);
+    }
+
+    /**
+     * Leaves the field as it is if the value has characters beyond ISO-8859-1, which a single byte cannot hold.
+     */
+    private static void putV1(ByteBuffer buffer, int offset, int length, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + i, i < value.length() ? (byte) value.charAt(i) : 0);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the I/O of a run so it can share storage with other services: megabytes read and written per second
+ * and files started per second, each by a token bucket, and files open at once. A bucket lets a second's worth
+ * of work through at once and makes callers wait once it runs dry. Files are copied by {@link #transfer} a
+ * {@value #CHUNK_SIZE} byte chunk at a time, each paid for before it is moved, so the limits hold while a large
+ * file is moving. Tags, whose size is often only known once they are read, are paid for afterwards. A limit of
+ * 0 lifts it.
+ * <p>
+ * The limits can be changed while running through a control file in the properties format with the keys
+ * {@value #READ_RATE}, {@value #WRITE_RATE}, {@value #FILE_RATE} and {@value #MAX_OPEN}. The file is checked
+ * every second: a key it sets overrides the limit given on the command line, a key it lacks, or the file being
+ * removed, brings that limit back. A file with an invalid value is ignored until it changes again.
+ */
+class Throttle implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Throttle.class);
+
+    static final String READ_RATE = "read-rate";
+    static final String WRITE_RATE = "write-rate";
+    static final String FILE_RATE = "file-rate";
+    static final String MAX_OPEN = "max-open";
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Lets everything through at once.
+     */
+    static final Throttle UNLIMITED = new Throttle(0, 0, 0, 0, null);
+
+    private static final double MB = 1024 * 1024;
+    private static final int CHECK_INTERVAL = 1;
+
+    /**
+     * A slot for an open file, given back when closed.
+     */
+    interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Bucket read = new Bucket();
+    private final Bucket write = new Bucket();
+    private final Bucket files = new Bucket();
+    private final Properties defaults = new Properties();
+    private final Path control;
+    private final ScheduledExecutorService scheduler;
+    private long controlModified;
+    private int maxOpen;
+    private int open;
+
+    /**
+     * @param readRate  megabytes read per second
+     * @param writeRate megabytes written per second
+     * @param fileRate  files started per second
+     * @param maxOpen   files open at once
+     * @param control   file to take limits from while running, or null
+     */
+    Throttle(int readRate, int writeRate, int fileRate, int maxOpen, File control) {
+        defaults.setProperty(READ_RATE, String.valueOf(readRate));
+        defaults.setProperty(WRITE_RATE, String.valueOf(writeRate));
+        defaults.setProperty(FILE_RATE, String.valueOf(fileRate));
+        defaults.setProperty(MAX_OPEN, String.valueOf(maxOpen));
+        apply(defaults);
+        this.control = control == null ? null : control.toPath();
+        if (control != null) {
+            reload();
+            scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+                final Thread thread = new Thread(r, "id3-throttle");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reload, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Waits until another file may be started.
+     */
+    void file() {
+        files.acquire(1);
+    }
+
+    /**
+     * Waits until another file may be opened.
+     */
+    Permit open() {
+        enter();
+        return this::leave;
+    }
+
+    /**
+     * Pays for bytes read, waiting if the rate is exceeded.
+     */
+    void read(long bytes) {
+        read.acquire(bytes);
+    }
+
+    /**
+     * Pays for bytes written, waiting if the rate is exceeded.
+     */
+    void write(long bytes) {
+        write.acquire(bytes);
+    }
+
+    /**
+     * Copies {@code count} bytes of {@code in} from {@code position} to {@code out}, paying for every chunk
+     * before it is moved.
+     */
+    void transfer(FileChannel in, long position, long count, WritableByteChannel out) throws IOException {
+        long pos = position;
+        final long end = position + count;
+        while (pos < end) {
+            final long chunk = Math.min(CHUNK_SIZE, end - pos);
+            read(chunk);
+            write(chunk);
+            final long last = pos + chunk;
+            while (pos < last) {
+                final long n = in.transferTo(pos, last - pos, out);
+                if (n <= 0 && pos >= in.size()) {
+                    throw new EOFException(String.format("Expected %d bytes but the file ended after %d", count, pos - position));
+                }
+                pos += n;
+            }
+        }
+    }
+
+    synchronized int getMaxOpen() {
+        return maxOpen;
+    }
+
+    private synchronized void enter() {
+        boolean interrupted = false;
+        while (maxOpen > 0 && open >= maxOpen) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // slots are given back by files being done, so waiting ends without help
+                interrupted = true;
+            }
+        }
+        open++;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void leave() {
+        open--;
+        notifyAll();
+    }
+
+    /**
+     * Applies the control file if it has changed since it was last read.
+     */
+    void reload() {
+        try {
+            final long modified = Files.exists(control) ? Files.getLastModifiedTime(control).toMillis() : 0;
+            if (modified == controlModified) {
+                return;
+            }
+            controlModified = modified;
+            final Properties limits = new Properties(defaults);
+            if (modified != 0) {
+                try (Reader reader = Files.newBufferedReader(control, StandardCharsets.UTF_8)) {
+                    limits.load(reader);
+                }
+            }
+            apply(limits);
+            LOGGER.info("Throttle limits from [{}]: {}", control, describe(limits));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Unable to apply throttle limits from [{}], keeping them as they are", control, e);
+        }
+    }
+
+    private void apply(Properties limits) {
+        final int readRate = limit(limits, READ_RATE);
+        final int writeRate = limit(limits, WRITE_RATE);
+        final int fileRate = limit(limits, FILE_RATE);
+        final int maxOpen = limit(limits, MAX_OPEN);
+        read.setRate(readRate * MB);
+        write.setRate(writeRate * MB);
+        files.setRate(fileRate);
+        synchronized (this) {
+            this.maxOpen = maxOpen;
+            notifyAll();
+        }
+    }
+
+    private static int limit(Properties limits, String key) {
+        final String value = limits.getProperty(key).trim();
+        try {
+            final int n = Integer.parseInt(value);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Expected a non-negative number for %s but got %s", key, value));
+    }
+
+    private static String describe(Properties limits) {
+        return String.format("%s=%s MB/s, %s=%s MB/s, %s=%s/s, %s=%s", READ_RATE, limits.getProperty(READ_RATE).trim(),
+                WRITE_RATE, limits.getProperty(WRITE_RATE).trim(), FILE_RATE, limits.getProperty(FILE_RATE).trim(),
+                MAX_OPEN, limits.getProperty(MAX_OPEN).trim());
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Holds up to a second's worth of tokens. Taking more than there are leaves the bucket in debt, and the
+     * caller waits until it is paid off, so the average rate holds however large single payments are.
+     */
+    static final class Bucket {
+
+        private volatile double rate;
+        private double tokens;
+        private long last = System.nanoTime();
+
+        /**
+         * @param rate tokens per second, 0 for no limit
+         */
+        synchronized void setRate(double rate) {
+            refill();
+            if (this.rate == 0) {
+                tokens = rate;
+            }
+            this.rate = rate;
+            tokens = Math.min(tokens, capacity());
+        }
+
+        void acquire(long n) {
+            if (rate == 0) {
+                return;
+            }
+            final long wait = reserve(n);
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * @return nanoseconds to wait for the tokens taken
+         */
+        private synchronized long reserve(long n) {
+            if (rate == 0) {
+                return 0;
+            }
+            refill();
+            tokens -= n;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            if (rate > 0) {
+                tokens = Math.min(capacity(), tokens + (now - last) * rate / TimeUnit.SECONDS.toNanos(1));
+            }
+            last = now;
+        }
+
+        private double capacity() {
+            return Math.max(rate, 1);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Watches directory trees and streams the files with the given extension that are created or modified in them,
+ * so a long running pipeline converts files as they arrive.
+ * <p>
+ * A file is only streamed once it has had no events and kept its size and modification time for the debounce
+ * period, so files still being uploaded are not read half written. New directories are watched as they appear
+ * and scanned for files created before their watch was registered. When events are lost to an overflow, only
+ * the directory they were lost for is scanned again, for files modified since the watch started.
+ * <p>
+ * Events are taken by the thread consuming the stream, which blocks until a file is ready or the watcher is
+ * closed.
+ */
+class Watcher implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(Watcher.class);
+
+    private final WatchService service;
+    private final String suffix;
+    private final long debounceNanos;
+    private final long started = System.currentTimeMillis();
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private final Deque<Path> ready = new ArrayDeque<>();
+
+    Watcher(List<Path> roots, String extension, long debounceMillis) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.suffix = "." + extension;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        try {
+            for (Path root : roots) {
+                register(root, false);
+            }
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return files as they are ready, the stream ends when the watcher is closed
+     */
+    Stream<File> stream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<File>(Long.MAX_VALUE, Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super File> action) {
+                while (ready.isEmpty()) {
+                    if (!poll()) {
+                        return false;
+                    }
+                }
+                action.accept(ready.poll().toFile());
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Waits for events, or for the next pending file to be due.
+     *
+     * @return false if the watcher is closed
+     */
+    boolean poll() {
+        try {
+            WatchKey key = pending.isEmpty() ? service.take() : service.poll(Math.max(0, nextDue() - System.nanoTime()), TimeUnit.NANOSECONDS);
+            while (key != null) {
+                handle(key);
+                key = service.poll();
+            }
+        } catch (ClosedWatchServiceException e) {
+            if (!pending.isEmpty()) {
+                LOGGER.info("Watch closed, {} files still changing left unprocessed", pending.size());
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        collectDue();
+        return true;
+    }
+
+    private void handle(WatchKey key) {
+        final Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.warn("Events lost for [{}], scanning it again", dir);
+                rescan(dir);
+                continue;
+            }
+            final Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path, true);
+                } catch (IOException e) {
+                    LOGGER.error("Unable to watch directory [{}]", path, e);
+                }
+            } else if (matches(path)) {
+                changed(path);
+            }
+        }
+        if (!key.reset()) {
+            LOGGER.debug("Directory [{}] is no longer watched", dir);
+        }
+    }
+
+    /**
+     * Watches the tree, taking the files already in it when it has just been created.
+     */
+    private void register(Path root, boolean created) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                LOGGER.trace("Watching [{}]", dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (created && matches(file)) {
+                    changed(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void rescan(Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                    // directories created while events were lost are not watched yet, registering twice is harmless
+                    d.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (matches(file) && attrs.lastModifiedTime().toMillis() >= started) {
+                        changed(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("Unable to scan directory [{}]", dir, e);
+        }
+    }
+
+    private boolean matches(Path path) {
+        return path.getFileName().toString().endsWith(suffix) && Files.isRegularFile(path);
+    }
+
+    private void changed(Path file) {
+        pending.put(file, new Pending(file, System.nanoTime() + debounceNanos));
+    }
+
+    private long nextDue() {
+        long due = Long.MAX_VALUE;
+        for (Pending p : pending.values()) {
+            due = Math.min(due, p.due);
+        }
+        return due;
+    }
+
+    private void collectDue() {
+        final long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Path, Pending> entry = it.next();
+            final Pending p = entry.getValue();
+            if (p.due > now) {
+                continue;
+            }
+            final File file = entry.getKey().toFile();
+            if (!file.isFile()) {
+                it.remove();
+            } else if (file.length() != p.size || file.lastModified() != p.mtime) {
+                entry.setValue(new Pending(entry.getKey(), now + debounceNanos));
+            } else {
+                it.remove();
+                ready.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Stops watching, a consumer waiting for files sees the end of the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private static final class Pending {
+        private final long due;
+        private final long size;
+        private final long mtime;
+
+        private Pending(Path file, long due) {
+            this.due = due;
+            this.size = file.toFile().length();
+            this.mtime = file.toFile().lastModified();
+        }
+    }
+}
@@ -25,24 +25,38 @@ package io.github.olegzzz.id3.handler;
 
 import java.util.function.Function;
 import java.util.function.IntPredicate;
-import java.util.function.IntUnaryOperator;
 
+/**
+ * Maps chars of the Windows-1252 range to cyrillic letters. Returns the very same instance when there
+ * is nothing to convert, so callers can detect changes by reference and clean strings cost no allocation.
+ */
 public class Win1252Converter implements Function<String, String>{
 
     private static final int UTF8_START=0x0410;
     private static final int OFFSET = UTF8_START - Win1252Range.WIN1252_START;
 
-    private static final IntPredicate rangePredicate = new Win1252Range();
+    private static final char[] TABLE = new char[256];
 
-    private final IntUnaryOperator win1252toUtf8 = (i) -> {
-        if (rangePredicate.test(i))
-            return i + OFFSET;
-        else
-            return i;
-    };
+    static {
+        final IntPredicate rangePredicate = new Win1252Range();
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = (char) (rangePredicate.test(i) ? i + OFFSET : i);
+        }
+    }
 
     @Override
     public String apply(String s) {
-        return new String(s.codePoints().map(win1252toUtf8).toArray(), 0, s.length());
+        final int first = Win1252Range.indexIn(s);
+        if (first < 0) {
+            return s;
+        }
+        final char[] chars = s.toCharArray();
+        for (int i = first; i < chars.length; i++) {
+            final char c = chars[i];
+            if (c < TABLE.length) {
+                chars[i] = TABLE[c];
+            }
+        }
+        return new String(chars);
     }
 }
@@ -23,15 +23,12 @@
  */
 package io.github.olegzzz.id3.handler;
 
-import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 
 public class Win1252Predicate implements Predicate<String>{
 
-    private static final IntPredicate predicate = new Win1252Range();
-
     @Override
     public boolean test(String s) {
-        return s.codePoints().filter(predicate).findAny().isPresent();
+        return Win1252Range.indexIn(s) >= 0;
     }
 }
@@ -34,4 +34,17 @@ class Win1252Range implements IntPredicate{
     public boolean test(int value) {
         return value >= WIN1252_START && value <= WIN1252_END;
     }
+
+    /**
+     * @return index of the first char within the range or -1 if there is none
+     */
+    static int indexIn(String s) {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            final char c = s.charAt(i);
+            if (c >= WIN1252_START && c <= WIN1252_END) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,151 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import io.github.olegzzz.id3.config.Stage;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of files and bytes and latency histograms of the processing stages. Everything is updated
+ * without locks, so the workers of all stages can report concurrently.
+ */
+public class Metrics implements MetricsMXBean {
+
+    public static final String OBJECT_NAME = "io.github.olegzzz.id3:type=Metrics";
+
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+
+    public Metrics() {
+        for (Counter c : Counter.values()) {
+            counters.put(c, new LongAdder());
+        }
+        for (Stage s : Stage.values()) {
+            latencies.put(s, new LatencyHistogram());
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public void add(Counter counter, long value) {
+        counters.get(counter).add(value);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    public void record(Stage stage, long nanos) {
+        latencies.get(stage).record(nanos);
+    }
+
+    public LatencyHistogram latency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        counters.forEach((c, n) -> result.put(c.label(), n.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return quantileMillis(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return quantileMillis(0.99);
+    }
+
+    private Map<String, Double> quantileMillis(double quantile) {
+        final Map<String, Double> result = new LinkedHashMap<>();
+        latencies.forEach((s, h) -> result.put(label(s), millis(h.quantileNanos(quantile))));
+        return result;
+    }
+
+    /**
+     * @return counters and stage latencies in a few human readable lines
+     */
+    public String summary() {
+        final StringBuilder sb = new StringBuilder();
+        counters.forEach((c, n) -> sb.append(sb.length() == 0 ? "" : ", ").append(c.label()).append(' ').append(n.sum()));
+        latencies.forEach((s, h) -> sb.append(String.format(Locale.ROOT, "%n%s: %d files, p50 %.3f ms, p99 %.3f ms",
+                label(s), h.getCount(), millis(h.quantileNanos(0.5)), millis(h.quantileNanos(0.99)))));
+        return sb.toString();
+    }
+
+    /**
+     * @return metrics in the Prometheus text exposition format
+     */
+    public String prometheus() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("# HELP id3_files_total Files by what happened to them\n");
+        sb.append("# TYPE id3_files_total counter\n");
+        for (Counter c : Counter.values()) {
+            if (c != Counter.BYTES_READ && c != Counter.BYTES_WRITTEN) {
+                sb.append("id3_files_total{event=\"").append(c.label()).append("\"} ").append(get(c)).append('\n');
+            }
+        }
+        sb.append("# HELP id3_bytes_read_total Bytes read from mp3 files\n");
+        sb.append("# TYPE id3_bytes_read_total counter\n");
+        sb.append("id3_bytes_read_total ").append(get(Counter.BYTES_READ)).append('\n');
+        sb.append("# HELP id3_bytes_written_total Bytes written to mp3 files\n");
+        sb.append("# TYPE id3_bytes_written_total counter\n");
+        sb.append("id3_bytes_written_total ").append(get(Counter.BYTES_WRITTEN)).append('\n');
+        sb.append("# HELP id3_stage_latency_seconds Time a file spends in a stage\n");
+        sb.append("# TYPE id3_stage_latency_seconds summary\n");
+        latencies.forEach((s, h) -> {
+            final String stage = "stage=\"" + label(s) + "\"";
+            sb.append(String.format(Locale.ROOT, "id3_stage_latency_seconds{%s,quantile=\"0.5\"} %.6f\n", stage, seconds(h.quantileNanos(0.5))));
+            sb.append(String.format(Locale.ROOT, "id3_stage_latency_seconds{%s,quantile=\"0.99\"} %.6f\n", stage, seconds(h.quantileNanos(0.99))));
+            sb.append(String.format(Locale.ROOT, "id3_stage_latency_seconds_sum{%s} %.6f\n", stage, seconds(h.getSumNanos())));
+            sb.append(String.format(Locale.ROOT, "id3_stage_latency_seconds_count{%s} %d\n", stage, h.getCount()));
+        });
+        return sb.toString();
+    }
+
+    private static String label(Stage stage) {
+        return stage.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically logs how far a run got: completed and discovered files, files and megabytes per second
+ * over the last interval and the estimated time left at the average rate so far. Discovery runs along
+ * with processing, so the total is marked with a plus and the estimate is a lower bound until the walk
+ * is over. Reports are made from the counters of {@link Metrics} by a single sleeping thread, so
+ * workers pay nothing for them.
+ */
+public class ProgressReporter implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProgressReporter.class);
+    private static final double MB = 1024 * 1024;
+
+    private final Metrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final long start = System.nanoTime();
+    private volatile boolean discovering = true;
+
+    private long lastTime = start;
+    private long lastCompleted;
+    private long lastBytes;
+
+    public ProgressReporter(Metrics metrics, int intervalSeconds) {
+        this.metrics = metrics;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "id3-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> LOGGER.info(report(System.nanoTime())), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tells that all the files have been discovered, so the total is final.
+     */
+    public void discoveryDone() {
+        discovering = false;
+    }
+
+    synchronized String report(long now) {
+        final long completed = metrics.get(Counter.COMPLETED);
+        final long discovered = metrics.get(Counter.DISCOVERED);
+        final long bytes = metrics.get(Counter.BYTES_READ) + metrics.get(Counter.BYTES_WRITTEN);
+        final double interval = Math.max(1, now - lastTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        final double elapsed = Math.max(1, now - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        final double filesPerSecond = (completed - lastCompleted) / interval;
+        final double mbPerSecond = (bytes - lastBytes) / MB / interval;
+        final double averageRate = completed / elapsed;
+        lastTime = now;
+        lastCompleted = completed;
+        lastBytes = bytes;
+
+        final String eta = averageRate > 0 ? duration((long) ((discovered - completed) / averageRate)) : "unknown";
+        return String.format(Locale.ROOT, "Progress: %d/%d%s files (%.1f%%), %.1f files/s, %.2f MB/s, ETA %s",
+                completed, discovered, discovering ? "+" : "", discovered == 0 ? 0.0 : 100.0 * completed / discovered,
+                filesPerSecond, mbPerSecond, eta);
+    }
+
+    private static String duration(long seconds) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        LOGGER.info(report(System.nanoTime()));
+    }
+
+}
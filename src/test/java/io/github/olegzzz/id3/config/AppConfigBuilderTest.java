@@ -23,14 +23,19 @@
  */
 package io.github.olegzzz.id3.config;
 
+import io.github.olegzzz.id3.Client;
+import org.apache.commons.cli.AlreadySelectedException;
 import org.apache.commons.cli.MissingArgumentException;
 import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.ParseException;
+import org.apache.logging.log4j.LogManager;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -141,6 +146,22 @@ class AppConfigBuilderTest {
             assertFalse(config.isNoBackups(), "no backups");
         }
 
+        @Test
+        @DisplayName("parses quiet option and turns per file logging off")
+        void quiet() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"-q", "--file", file.getAbsolutePath()}).build();
+            assertTrue(config.isQuiet(), "quiet");
+            assertFalse(config.isVerbose(), "verbose");
+            assertFalse(LogManager.getLogger(AppConfigBuilderTest.class).isDebugEnabled());
+            assertTrue(LogManager.getLogger(AppConfigBuilderTest.class).isInfoEnabled());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when both verbose and quiet")
+        void verboseAndQuiet() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"-v", "-q", "--file", file.getAbsolutePath()}).build());
+        }
+
         @Test
         @DisplayName("parses dry-run option")
         void dryRun() throws ParseException {
@@ -167,6 +188,32 @@ class AppConfigBuilderTest {
             assertEquals(f.toURI(), config.getFile());
         }
 
+        @Test
+        @DisplayName("parses repeated file option")
+        void files() throws ParseException {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            AppConfig config = new AppConfigBuilder(new String[]{"--file", file.getAbsolutePath(), "--file", dir.getAbsolutePath()}).build();
+            assertEquals(Arrays.asList(file.getAbsoluteFile().toURI(), dir.toURI()), config.getFiles());
+            assertEquals(file.getAbsoluteFile().toURI(), config.getFile());
+            assertNull(config.getFilesFrom());
+        }
+
+        @Test
+        @DisplayName("parses files-from and from0 options")
+        void filesFrom() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--files-from", "-", "--from0"}).build();
+            assertEquals(AppConfig.STDIN, config.getFilesFrom());
+            assertTrue(config.isFrom0());
+            assertTrue(config.getFiles().isEmpty());
+            assertNull(config.getFile());
+        }
+
+        @Test
+        @DisplayName("throws AlreadySelectedException when both file and files-from passed")
+        void fileAndFilesFrom() {
+            assertThrows(AlreadySelectedException.class, () -> new AppConfigBuilder(new String[]{"--files-from", "-", "--file", file.getAbsolutePath()}));
+        }
+
         @Test
         @DisplayName("parses no-backups and verbose options")
         void noBackupAndVerbose() throws ParseException {
@@ -185,6 +232,185 @@ class AppConfigBuilderTest {
             assertTrue(config.isNoBackups(), "no backups");
         }
 
+        @Test
+        @DisplayName("parses executor and threads options")
+        void executorAndThreads() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--executor", "virtual", "--threads", "16", "--file", file.getAbsolutePath()}).build();
+            assertEquals(ExecutorType.VIRTUAL, config.getExecutor());
+            assertEquals(16, config.getThreads());
+        }
+
+        @Test
+        @DisplayName("parses stage-threads and queue-size options")
+        void stageThreads() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--threads", "2", "--stage-threads", "read=8, write=1", "--queue-size", "10", "--file", file.getAbsolutePath()}).build();
+            assertEquals(8, config.getThreads(Stage.READ));
+            assertEquals(2, config.getThreads(Stage.CONVERT));
+            assertEquals(2, config.getThreads(Stage.BACKUP));
+            assertEquals(1, config.getThreads(Stage.WRITE));
+            assertEquals(10, config.getQueueSize());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when stage-threads is malformed")
+        void badStageThreads() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--stage-threads", "read", "--file", file.getAbsolutePath()}).build());
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--stage-threads", "parse=2", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("parses backup-mode, backup-strategy and restore options")
+        void backupModeAndRestore() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--backup-mode", "tag", "--backup-strategy", "copy", "--restore", "--file", file.getAbsolutePath()}).build();
+            assertEquals(BackupMode.TAG, config.getBackupMode());
+            assertEquals(BackupStrategy.COPY, config.getBackupStrategy());
+            assertTrue(config.isRestore(), "restore");
+        }
+
+        @Test
+        @DisplayName("parses fields option")
+        void fields() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--fields", "tit2, TPE1,,COMM", "--file", file.getAbsolutePath()}).build();
+            assertEquals(new HashSet<>(Arrays.asList("TIT2", "TPE1", "COMM")), config.getFields());
+        }
+
+        @Test
+        @DisplayName("parses manifest option")
+        void manifest() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--manifest", "run.manifest", "--file", file.getAbsolutePath()}).build();
+            assertEquals(new File("run.manifest"), config.getManifest());
+        }
+
+        @Test
+        @DisplayName("parses cache-size option")
+        void cacheSize() throws ParseException {
+            assertEquals(500, new AppConfigBuilder(new String[]{"--cache-size", "500", "--file", file.getAbsolutePath()}).build().getCacheSize());
+            assertEquals(0, new AppConfigBuilder(new String[]{"--cache-size", "0", "--file", file.getAbsolutePath()}).build().getCacheSize());
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--cache-size", "-1", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("parses metrics options")
+        void metrics() throws ParseException {
+            AppConfig config = new AppConfigBuilder(new String[]{"--metrics-file", "id3.prom", "--metrics-interval", "30", "--file", file.getAbsolutePath()}).build();
+            assertEquals(new File("id3.prom"), config.getMetricsFile());
+            assertEquals(30, config.getMetricsInterval());
+        }
+
+        @Test
+        @DisplayName("parses progress option with or without interval")
+        void progress() throws ParseException {
+            assertEquals(AppConfigBuilder.PROGRESS_INTERVAL, new AppConfigBuilder(new String[]{"--progress", "--file", file.getAbsolutePath()}).build().getProgressInterval());
+            assertEquals(30, new AppConfigBuilder(new String[]{"--progress", "30", "--file", file.getAbsolutePath()}).build().getProgressInterval());
+        }
+
+        @Test
+        @DisplayName("parses report option")
+        void report() throws ParseException {
+            assertEquals(new File("changes.csv"), new AppConfigBuilder(new String[]{"--report", "changes.csv", "--file", file.getAbsolutePath()}).build().getReport());
+        }
+
+        @Test
+        @DisplayName("parses journal and resume options")
+        void journal() throws ParseException {
+            final AppConfig config = new AppConfigBuilder(new String[]{"--journal", "run.journal", "--resume", "--file", file.getAbsolutePath()}).build();
+            assertEquals(new File("run.journal"), config.getJournal());
+            assertTrue(config.isResume());
+        }
+
+        @Test
+        @DisplayName("parses atomic save and fsync options")
+        void fsync() throws ParseException {
+            final AppConfig config = new AppConfigBuilder(new String[]{"--atomic-save", "--fsync", "batch", "--fsync-batch", "50",
+                    "--fsync-interval", "2", "--file", file.getAbsolutePath()}).build();
+            assertTrue(config.isAtomicSave());
+            assertEquals(FsyncPolicy.BATCH, config.getFsync());
+            assertEquals(50, config.getFsyncBatch());
+            assertEquals(2, config.getFsyncInterval());
+        }
+
+        @Test
+        @DisplayName("syncs every file saved atomically unless told otherwise")
+        void atomicSaveSyncsFiles() throws ParseException {
+            assertEquals(FsyncPolicy.FILE, new AppConfigBuilder(new String[]{"--atomic-save", "--file", file.getAbsolutePath()}).build().getFsync());
+        }
+
+        @Test
+        @DisplayName("parses watch and debounce options")
+        void watch() throws ParseException {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            final AppConfig config = new AppConfigBuilder(new String[]{"--watch", "--debounce", "500", "--file", dir.getAbsolutePath()}).build();
+            assertTrue(config.isWatch());
+            assertEquals(500, config.getDebounce());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when watching a file")
+        void watchFile() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--watch", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("parses serve option with or without port")
+        void serve() throws ParseException {
+            assertEquals(Client.DEFAULT_PORT, new AppConfigBuilder(new String[]{"--serve"}).build().getServePort());
+            assertEquals(9000, new AppConfigBuilder(new String[]{"--serve", "9000"}).build().getServePort());
+        }
+
+        @Test
+        @DisplayName("parses throttle options")
+        void throttle() throws ParseException {
+            final AppConfig config = new AppConfigBuilder(new String[]{"--read-rate", "50", "--write-rate", "20", "--file-rate", "0",
+                    "--max-open", "4", "--throttle-file", "limits.properties", "--file", file.getAbsolutePath()}).build();
+            assertEquals(50, config.getReadRate());
+            assertEquals(20, config.getWriteRate());
+            assertEquals(0, config.getFileRate());
+            assertEquals(4, config.getMaxOpen());
+            assertEquals(new File("limits.properties"), config.getThrottleFile());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when a rate is negative")
+        void negativeRate() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--read-rate", "-1", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("parses copy-to option and makes no backups of the originals")
+        void copyTo() throws ParseException {
+            final File dest = new File(file.getAbsoluteFile().getParentFile().getParentFile(), "archive");
+            final AppConfig config = new AppConfigBuilder(new String[]{"--copy-to", dest.getPath(), "--file", file.getAbsolutePath()}).build();
+            assertEquals(dest, config.getCopyTo());
+            assertFalse(config.needBackup());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when copying into a directory handled")
+        void copyIntoItself() {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--copy-to", new File(dir, "copies").getPath(),
+                    "--file", dir.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when resuming without journal")
+        void resumeWithoutJournal() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--resume", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when executor is unknown")
+        void unknownExecutor() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--executor", "forkjoin", "--file", file.getAbsolutePath()}).build());
+        }
+
+        @Test
+        @DisplayName("throws IllegalArgumentException when threads is not positive")
+        void badThreads() {
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--threads", "0", "--file", file.getAbsolutePath()}).build());
+            assertThrows(IllegalArgumentException.class, () -> new AppConfigBuilder(new String[]{"--threads", "many", "--file", file.getAbsolutePath()}).build());
+        }
+
     }
 
 }
@@ -27,7 +27,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DisplayName("An app config")
 class AppConfigTest {
@@ -54,4 +57,132 @@ class AppConfigTest {
         assertSame(AppConfig.DEFAULT_NO_BKPS, config.isNoBackups());
     }
 
+    @Test
+    void executorIsDefault() {
+        assertSame(AppConfig.DEFAULT_EXECUTOR, config.getExecutor());
+    }
+
+    @Test
+    void threadsIsDefault() {
+        assertEquals(AppConfig.DEFAULT_THREADS, config.getThreads());
+    }
+
+    @Test
+    void stageThreadsFallBackToThreads() {
+        for (Stage stage : Stage.values()) {
+            assertEquals(AppConfig.DEFAULT_THREADS, config.getThreads(stage));
+        }
+    }
+
+    @Test
+    void backupModeIsDefault() {
+        assertSame(AppConfig.DEFAULT_BACKUP_MODE, config.getBackupMode());
+    }
+
+    @Test
+    void backupStrategyIsDefault() {
+        assertSame(AppConfig.DEFAULT_BACKUP_STRATEGY, config.getBackupStrategy());
+    }
+
+    @Test
+    void fieldsAreDefault() {
+        assertSame(AppConfig.DEFAULT_FIELDS, config.getFields());
+    }
+
+    @Test
+    void noManifestByDefault() {
+        assertNull(config.getManifest());
+    }
+
+    @Test
+    void cacheSizeIsDefault() {
+        assertEquals(AppConfig.DEFAULT_CACHE_SIZE, config.getCacheSize());
+    }
+
+    @Test
+    void noMetricsFileByDefault() {
+        assertNull(config.getMetricsFile());
+        assertEquals(AppConfig.DEFAULT_METRICS_INTERVAL, config.getMetricsInterval());
+    }
+
+    @Test
+    void progressIsDefault() {
+        assertEquals(AppConfig.DEFAULT_PROGRESS_INTERVAL, config.getProgressInterval());
+    }
+
+    @Test
+    void quietIsDefault() {
+        assertSame(AppConfig.DEFAULT_QUIET, config.isQuiet());
+    }
+
+    @Test
+    void noReportByDefault() {
+        assertNull(config.getReport());
+    }
+
+    @Test
+    void noJournalByDefault() {
+        assertNull(config.getJournal());
+    }
+
+    @Test
+    void atomicSaveIsDefault() {
+        assertSame(AppConfig.DEFAULT_ATOMIC_SAVE, config.isAtomicSave());
+    }
+
+    @Test
+    void fsyncIsDefault() {
+        assertSame(AppConfig.DEFAULT_FSYNC, config.getFsync());
+        assertEquals(AppConfig.DEFAULT_FSYNC_BATCH, config.getFsyncBatch());
+        assertEquals(AppConfig.DEFAULT_FSYNC_INTERVAL, config.getFsyncInterval());
+    }
+
+    @Test
+    void noFilesByDefault() {
+        assertTrue(config.getFiles().isEmpty());
+        assertNull(config.getFile());
+        assertNull(config.getFilesFrom());
+        assertSame(AppConfig.DEFAULT_FROM0, config.isFrom0());
+    }
+
+    @Test
+    void watchIsDefault() {
+        assertSame(AppConfig.DEFAULT_WATCH, config.isWatch());
+        assertEquals(AppConfig.DEFAULT_DEBOUNCE, config.getDebounce());
+    }
+
+    @Test
+    void servePortIsDefault() {
+        assertEquals(AppConfig.DEFAULT_SERVE_PORT, config.getServePort());
+    }
+
+    @Test
+    void throttleIsOff() {
+        assertEquals(AppConfig.DEFAULT_READ_RATE, config.getReadRate());
+        assertEquals(AppConfig.DEFAULT_WRITE_RATE, config.getWriteRate());
+        assertEquals(AppConfig.DEFAULT_FILE_RATE, config.getFileRate());
+        assertEquals(AppConfig.DEFAULT_MAX_OPEN, config.getMaxOpen());
+        assertNull(config.getThrottleFile());
+    }
+
+    @Test
+    void copyToIsNull() {
+        assertNull(config.getCopyTo());
+    }
+
+    @Test
+    void resumeIsDefault() {
+        assertSame(AppConfig.DEFAULT_RESUME, config.isResume());
+    }
+
+    @Test
+    void restoreIsDefault() {
+        assertSame(AppConfig.DEFAULT_RESTORE, config.isRestore());
+    }
+
+    @Test
+    void queueSizeIsDefault() {
+        assertEquals(AppConfig.DEFAULT_QUEUE_SIZE, config.getQueueSize());
+    }
+
 }
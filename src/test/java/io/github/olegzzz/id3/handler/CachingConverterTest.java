@@ -0,0 +1,95 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("A caching converter")
+class CachingConverterTest {
+
+    Function<String, String> converter;
+    CachingConverter cache;
+
+    @BeforeEach
+    void setUp() {
+        converter = spy(new Win1252Converter());
+        cache = new CachingConverter(converter, 100);
+    }
+
+    @Test
+    @DisplayName("converts a repeated value once")
+    void hit() {
+        assertEquals("АБк", cache.apply(new String("ÀÁê")));
+        assertEquals("АБк", cache.apply(new String("ÀÁê")));
+
+        verify(converter, times(1)).apply(any());
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+
+    @Test
+    @DisplayName("returns the very instance of a clean value")
+    void clean() {
+        final String first = new String("Foo");
+        final String second = new String("Foo");
+        assertSame(first, cache.apply(first));
+        assertSame(second, cache.apply(second));
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    @DisplayName("answers the predicate from the same cache")
+    void predicate() {
+        final Predicate<String> predicate = cache.asPredicate();
+        assertTrue(predicate.test(new String("ÀÁê")));
+        assertFalse(predicate.test(new String("Foo")));
+        assertTrue(predicate.test(new String("ÀÁê")));
+        assertFalse(predicate.test(new String("Foo")));
+
+        verify(converter, times(2)).apply(any());
+    }
+
+    @Test
+    @DisplayName("does not cache long values")
+    void longValue() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= CachingConverter.MAX_LENGTH; i++) {
+            sb.append('À');
+        }
+        cache.apply(sb.toString());
+        cache.apply(sb.toString());
+
+        verify(converter, times(2)).apply(any());
+        assertEquals(0, cache.getStats().requestCount());
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A change report")
+class ChangeReportTest {
+
+    static final ChangeReport.Entry ENTRY = new ChangeReport.Entry(new File("a, \"b\".mp3"), ChangeReport.Status.CONVERTED,
+            Arrays.asList(new FieldChange("TIT2", "À\\", "А\\"), new FieldChange("COMM", "x\ny", "x\ny")), TimeUnit.MICROSECONDS.toNanos(15));
+
+    @Test
+    @DisplayName("formats JSON Lines")
+    void json() {
+        assertEquals("{\"path\":\"a, \\\"b\\\".mp3\",\"status\":\"converted\",\"fields\":2,\"elapsed_us\":15,\"changes\":["
+                        + "{\"field\":\"TIT2\",\"before\":\"À\\\\\",\"after\":\"А\\\\\"},"
+                        + "{\"field\":\"COMM\",\"before\":\"x\\ny\",\"after\":\"x\\ny\"}]}\n",
+                ChangeReport.json(ENTRY));
+    }
+
+    @Test
+    @DisplayName("formats CSV")
+    void csv() {
+        assertEquals("\"a, \"\"b\"\".mp3\",converted,2,15,\"TIT2: [À\\] -> [А\\] | COMM: [x\ny] -> [x\ny]\"\n", ChangeReport.csv(ENTRY));
+    }
+
+    @Test
+    @DisplayName("writes a record of every finished file from many threads")
+    void concurrent() throws Exception {
+        final File file = File.createTempFile("report", ".jsonl");
+        try {
+            try (ChangeReport report = new ChangeReport(file)) {
+                IntStream.range(0, 1000).parallel().forEach((i) -> {
+                    final File f = new File(i + ".mp3");
+                    report.started(f);
+                    report.changed(f, Collections.singletonList(new FieldChange("TIT2", "À", "А")));
+                    report.finished(f, ChangeReport.Status.CONVERTED);
+                });
+            }
+            final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(1000, lines.size());
+            assertTrue(lines.stream().allMatch((l) -> l.contains("\"fields\":1")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("writes a CSV header")
+    void csvHeader() throws Exception {
+        final File file = File.createTempFile("report", ".csv");
+        try {
+            try (ChangeReport report = new ChangeReport(file)) {
+                report.finished(new File("a.mp3"), ChangeReport.Status.FAILED);
+            }
+            assertEquals(Arrays.asList("path,status,fields,elapsed_us,changes", "a.mp3,failed,0,0,"),
+                    Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.BackupStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A file backup")
+class FileBackupTest {
+
+    File file;
+    File bkpFile;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = File.createTempFile(UUID.randomUUID().toString(), ".mp3");
+        Files.write(file.toPath(), Mp3Samples.audio());
+        bkpFile = new File(file.getAbsolutePath() + "~");
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+        bkpFile.delete();
+    }
+
+    @ParameterizedTest
+    @EnumSource(BackupStrategy.class)
+    @DisplayName("makes an identical copy and counts the strategy used")
+    void copy(BackupStrategy strategy) throws IOException {
+        final FileBackup backup = new FileBackup(strategy);
+        final BackupStrategy used = backup.backup(file, bkpFile, Throttle.UNLIMITED);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(bkpFile.toPath()));
+        assertEquals(Collections.singletonMap(used, 1L), backup.getStats());
+        if (strategy != BackupStrategy.AUTO) {
+            assertEquals(strategy, used);
+        }
+    }
+
+    @Test
+    @DisplayName("links the backup to the original file")
+    void link() throws IOException {
+        new FileBackup(BackupStrategy.LINK).backup(file, bkpFile, Throttle.UNLIMITED);
+        assertEquals(key(file), key(bkpFile));
+    }
+
+    @Test
+    @DisplayName("replaces an existing backup")
+    void replace() throws IOException {
+        Files.write(bkpFile.toPath(), new byte[]{1, 2, 3});
+        new FileBackup(BackupStrategy.COPY).backup(file, bkpFile, Throttle.UNLIMITED);
+        assertEquals(file.length(), bkpFile.length());
+    }
+
+    private static Object key(File f) throws IOException {
+        return Files.readAttributes(f.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+}
@@ -23,26 +23,48 @@
  */
 package io.github.olegzzz.id3.handler;
 
+import io.github.olegzzz.id3.Client;
 import io.github.olegzzz.id3.MockitoExtension;
 import io.github.olegzzz.id3.config.AppConfigBuilder;
+import io.github.olegzzz.id3.config.BackupStrategy;
+import io.github.olegzzz.id3.config.FsyncPolicy;
+import io.github.olegzzz.id3.config.Stage;
+import io.github.olegzzz.id3.metrics.Counter;
+import io.github.olegzzz.id3.metrics.Metrics;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
 import org.jaudiotagger.audio.mp3.MP3File;
 import org.jaudiotagger.tag.FieldDataInvalidException;
 import org.jaudiotagger.tag.FieldKey;
 import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.Mock;
 import org.mockito.Spy;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -133,13 +155,463 @@ class FileHandlerTest {
             when(mp3File.getTag()).thenReturn(tag);
             when(tag.getFirst(any(FieldKey.class))).thenReturn(original);
 
-            handler.convert(mp3File);
-            verify(predicate, times(FieldKey.values().length)).test(original);
-            verify(converter, times(FieldKey.values().length + 1)).apply(original);
-            verify(tag, times(FieldKey.values().length)).setField(any(FieldKey.class), eq(converted));
+            assertTrue(handler.convert(mp3File).isPresent());
+            // a tag which is not ID3v2 is converted by the four ID3v1 text fields
+            verify(predicate, times(4)).test(original);
+            verify(converter, times(4 + 1)).apply(original);
+            verify(tag, times(4)).setField(any(FieldKey.class), eq(converted));
 
         }
 
+        @Test
+        @DisplayName("returns empty when no field needs conversion")
+        void nothingToConvert() {
+            when(mp3File.getFile()).thenReturn(file);
+            when(mp3File.getTag()).thenReturn(tag);
+            when(tag.getFirst(any(FieldKey.class))).thenReturn("Foo");
+
+            assertFalse(handler.convert(mp3File).isPresent());
+        }
+
+    }
+
+    @Nested
+    @DisplayName("when a directory is handled")
+    class Directory {
+
+        File dir;
+        File dirty;
+        File clean;
+
+        @BeforeEach
+        void setup() throws Exception {
+            dir = Files.createTempDirectory(UUID.randomUUID().toString()).toFile();
+            final ID3v23Tag win1252 = new ID3v23Tag();
+            win1252.setField(FieldKey.TITLE, "ÀÁê");
+            dirty = Mp3Samples.write(new File(dir, "dirty.mp3"), win1252, 100, null);
+            final ID3v23Tag utf8 = new ID3v23Tag();
+            utf8.setField(FieldKey.TITLE, "Foo");
+            clean = Mp3Samples.write(new File(dir, "clean.mp3"), utf8, 100, null);
+            handler = new FileHandler(new AppConfigBuilder(new String[]{"--file", dir.getAbsolutePath()}).build(),
+                    converter, predicate);
+        }
+
+        @AfterEach
+        void tearDown() throws IOException {
+            FileUtils.deleteDirectory(dir);
+        }
+
+        @Test
+        @DisplayName("backs up and saves only files that change")
+        void onlyChanged() throws Exception {
+            final byte[] cleanBytes = Files.readAllBytes(clean.toPath());
+
+            handler.handle();
+
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+            assertTrue(new File(dirty.getAbsolutePath() + "~").exists());
+            assertFalse(new File(clean.getAbsolutePath() + "~").exists());
+            assertArrayEquals(cleanBytes, Files.readAllBytes(clean.toPath()));
+        }
+
+        @Test
+        @DisplayName("counts files, bytes and stage latencies")
+        void metrics() throws Exception {
+            handler.handle();
+
+            final Metrics metrics = handler.getMetrics();
+            assertEquals(2, metrics.get(Counter.DISCOVERED));
+            assertEquals(2, metrics.get(Counter.READ));
+            assertEquals(1, metrics.get(Counter.CONVERTED));
+            assertEquals(1, metrics.get(Counter.SKIPPED));
+            assertEquals(1, metrics.get(Counter.BACKED_UP));
+            assertEquals(1, metrics.get(Counter.SAVED));
+            assertEquals(0, metrics.get(Counter.FAILED));
+            assertEquals(2, metrics.get(Counter.COMPLETED));
+            assertTrue(metrics.get(Counter.BYTES_READ) > 0);
+            assertTrue(metrics.get(Counter.BYTES_WRITTEN) > 0);
+            assertEquals(2, metrics.latency(Stage.READ).getCount());
+            assertEquals(1, metrics.latency(Stage.WRITE).getCount());
+        }
+
+        @Test
+        @DisplayName("sums up conversions of many files only")
+        void reports() throws Exception {
+            assertTrue(handler.reports());
+            assertFalse(new FileHandler(new AppConfigBuilder(new String[]{"--file", dirty.getAbsolutePath()}).build(),
+                    converter, predicate).reports());
+            assertTrue(new FileHandler(new AppConfigBuilder(new String[]{"--file", dirty.getAbsolutePath(),
+                    "--metrics-file", new File(dir, "metrics.prom").getAbsolutePath()}).build(),
+                    converter, predicate).reports());
+            assertFalse(new FileHandler(new AppConfigBuilder(new String[]{"--file", dir.getAbsolutePath(),
+                    "--restore"}).build(), converter, predicate).reports());
+        }
+
+        @Test
+        @DisplayName("reports what happened to every file")
+        void report() throws Exception {
+            final File report = File.createTempFile("report", ".jsonl");
+            try {
+                new FileHandler(new AppConfigBuilder(new String[]{"--report", report.getAbsolutePath(), "--file", dir.getAbsolutePath()}).build(),
+                        converter, predicate).handle();
+
+                final List<String> lines = Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+                assertEquals(2, lines.size());
+                final String dirtyLine = lines.stream().filter((l) -> l.contains("dirty.mp3")).findFirst().orElse("");
+                assertTrue(dirtyLine.contains("\"status\":\"converted\",\"fields\":1"), dirtyLine);
+                assertTrue(dirtyLine.contains("{\"field\":\"TIT2\",\"before\":\"ÀÁê\",\"after\":\"АБк\"}"), dirtyLine);
+                final String cleanLine = lines.stream().filter((l) -> l.contains("clean.mp3")).findFirst().orElse("");
+                assertTrue(cleanLine.contains("\"status\":\"clean\",\"fields\":0"), cleanLine);
+            } finally {
+                report.delete();
+            }
+        }
+
+        @ParameterizedTest
+        @EnumSource(BackupStrategy.class)
+        @DisplayName("keeps the original content in full backups")
+        void backupStrategies(BackupStrategy strategy) throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+
+            new FileHandler(new AppConfigBuilder(new String[]{"--backup-strategy", strategy.name(), "--file", dir.getAbsolutePath()}).build(),
+                    converter, predicate).handle();
+
+            assertArrayEquals(dirtyBytes, Files.readAllBytes(new File(dirty.getAbsolutePath() + "~").toPath()));
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+        }
+
+        @ParameterizedTest
+        @EnumSource(value = BackupStrategy.class, names = {"AUTO", "LINK"})
+        @DisplayName("converts the file a symbolic link leads to and backs it up by copy")
+        void symbolicLink(BackupStrategy strategy) throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+            final Path target = Files.createTempFile("target", ".mp3");
+            try {
+                Files.move(dirty.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                Files.createSymbolicLink(dirty.toPath(), target);
+
+                new FileHandler(new AppConfigBuilder(new String[]{"--backup-strategy", strategy.name(), "--file", dir.getAbsolutePath()}).build(),
+                        converter, predicate).handle();
+
+                assertTrue(Files.isSymbolicLink(dirty.toPath()));
+                assertEquals("АБк", new TagReader().read(target.toFile()).getTag().getFirst(FieldKey.TITLE));
+                final Path bkp = Paths.get(dirty.getAbsolutePath() + "~");
+                assertFalse(Files.isSymbolicLink(bkp));
+                assertArrayEquals(dirtyBytes, Files.readAllBytes(bkp));
+            } finally {
+                Files.delete(target);
+            }
+        }
+
+        @Test
+        @DisplayName("keeps the inode of a file with other hard links")
+        void hardLink() throws Exception {
+            final Path other = Files.createTempDirectory("other").resolve("other.mp3");
+            try {
+                Files.createLink(other, dirty.toPath());
+                final Object inode = Files.getAttribute(dirty.toPath(), "unix:ino");
+
+                handler.handle();
+
+                assertEquals(inode, Files.getAttribute(dirty.toPath(), "unix:ino"));
+                assertEquals("АБк", new TagReader().read(other.toFile()).getTag().getFirst(FieldKey.TITLE));
+            } finally {
+                Files.delete(other);
+                Files.delete(other.getParent());
+            }
+        }
+
+        @Test
+        @DisplayName("restores original tags from tag backups")
+        void tagBackupAndRestore() throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+
+            new FileHandler(new AppConfigBuilder(new String[]{"--backup-mode", "tag", "--file", dir.getAbsolutePath()}).build(),
+                    converter, predicate).handle();
+            assertTrue(TagBackup.sidecar(dirty).exists());
+            assertFalse(new File(dirty.getAbsolutePath() + "~").exists());
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+
+            new FileHandler(new AppConfigBuilder(new String[]{"--restore", "--file", dir.getAbsolutePath()}).build(),
+                    converter, predicate).handle();
+            assertArrayEquals(dirtyBytes, Files.readAllBytes(dirty.toPath()));
+            assertFalse(TagBackup.sidecar(dirty).exists());
+        }
+
+        @Test
+        @DisplayName("skips files the manifest knows unchanged")
+        void manifest() throws Exception {
+            final File manifest = File.createTempFile("manifest", ".id3");
+            try {
+                final String[] args = {"--no-backup", "--manifest", manifest.getAbsolutePath(), "--file", dir.getAbsolutePath()};
+                new FileHandler(new AppConfigBuilder(args).build(), converter, predicate).handle();
+                verify(predicate, atLeastOnce()).test(any());
+
+                reset(predicate);
+                new FileHandler(new AppConfigBuilder(args).build(), converter, predicate).handle();
+                verify(predicate, never()).test(any());
+
+                assertTrue(clean.setLastModified(clean.lastModified() - 10_000));
+                new FileHandler(new AppConfigBuilder(args).build(), converter, predicate).handle();
+                verify(predicate).test("Foo");
+                verify(predicate, never()).test("АБк");
+            } finally {
+                manifest.delete();
+            }
+        }
+
+        @Test
+        @DisplayName("resumes an interrupted run from the journal keeping the original backup")
+        void resume() throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+            final File bkp = new File(dirty.getAbsolutePath() + "~");
+            Files.copy(dirty.toPath(), bkp.toPath());
+            Files.write(dirty.toPath(), Arrays.copyOf(dirtyBytes, dirtyBytes.length / 2));
+            final File journal = File.createTempFile("run", ".journal");
+            try {
+                Files.write(journal.toPath(), Arrays.asList("D " + clean.getAbsolutePath(), "B " + dirty.getAbsolutePath()), StandardCharsets.UTF_8);
+
+                final FileHandler resumed = new FileHandler(new AppConfigBuilder(new String[]{"--journal", journal.getAbsolutePath(), "--resume",
+                        "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+                resumed.handle();
+
+                assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+                assertArrayEquals(dirtyBytes, Files.readAllBytes(bkp.toPath()));
+                verify(predicate, never()).test("Foo");
+                assertEquals(1, resumed.getMetrics().get(Counter.READ));
+                assertTrue(Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8).contains("D " + dirty.getAbsolutePath()));
+            } finally {
+                journal.delete();
+            }
+        }
+
+        @Test
+        @DisplayName("leaves an interrupted file and its backup alone when the backup cannot be restored")
+        void resumeUnrestorable() throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+            final File sidecar = new TagBackup().save(new TagReader().read(dirty));
+            final byte[] sidecarBytes = Files.readAllBytes(sidecar.toPath());
+            final byte[] torn = Arrays.copyOf(dirtyBytes, dirtyBytes.length / 2);
+            Files.write(dirty.toPath(), torn);
+            final File journal = File.createTempFile("run", ".journal");
+            try {
+                Files.write(journal.toPath(), Collections.singletonList("B " + dirty.getAbsolutePath()), StandardCharsets.UTF_8);
+
+                final FileHandler resumed = new FileHandler(new AppConfigBuilder(new String[]{"--backup-mode", "tag",
+                        "--journal", journal.getAbsolutePath(), "--resume", "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+                resumed.handle();
+
+                assertArrayEquals(torn, Files.readAllBytes(dirty.toPath()));
+                assertArrayEquals(sidecarBytes, Files.readAllBytes(sidecar.toPath()));
+                assertEquals(1, resumed.getMetrics().get(Counter.FAILED));
+                assertFalse(Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8).contains("D " + dirty.getAbsolutePath()));
+            } finally {
+                journal.delete();
+                sidecar.delete();
+            }
+        }
+
+        @ParameterizedTest
+        @EnumSource(FsyncPolicy.class)
+        @DisplayName("saves atomically with any fsync policy")
+        void atomicSave(FsyncPolicy policy) throws Exception {
+            final FileHandler atomic = new FileHandler(new AppConfigBuilder(new String[]{"--atomic-save", "--fsync", policy.name(),
+                    "--fsync-batch", "2", "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+            atomic.handle();
+
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+            assertEquals(1, atomic.getMetrics().get(Counter.SAVED));
+            assertEquals(2, atomic.getMetrics().get(Counter.COMPLETED));
+            assertEquals(0, dir.list((d, name) -> name.endsWith(TagWriter.TMP_SUFFIX)).length);
+        }
+
+        @Test
+        @DisplayName("converts within the throttle limits")
+        void throttle() throws Exception {
+            final FileHandler throttled = new FileHandler(new AppConfigBuilder(new String[]{"--read-rate", "1", "--write-rate", "1",
+                    "--file-rate", "1", "--max-open", "1", "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+            final long start = System.nanoTime();
+            throttled.handle();
+
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+            assertEquals(2, throttled.getMetrics().get(Counter.COMPLETED));
+            // the second file waits for the first to be paid for
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+        }
+
+        @Test
+        @DisplayName("handles only the files listed")
+        void filesFrom() throws Exception {
+            final File list = File.createTempFile("files", ".lst");
+            try {
+                Files.write(list.toPath(), (dirty.getAbsolutePath() + "\0" + new File(dir, "absent.mp3").getAbsolutePath() + "\0")
+                        .getBytes(StandardCharsets.UTF_8));
+                final FileHandler listed = new FileHandler(new AppConfigBuilder(new String[]{"--files-from", list.getAbsolutePath(), "--from0"}).build(),
+                        converter, predicate);
+                listed.handle();
+
+                assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+                assertEquals(1, listed.getMetrics().get(Counter.DISCOVERED));
+                verify(predicate, never()).test("Foo");
+            } finally {
+                list.delete();
+            }
+        }
+
+        @Test
+        @DisplayName("handles several roots")
+        void roots() throws Exception {
+            final FileHandler roots = new FileHandler(new AppConfigBuilder(new String[]{"--file", dirty.getAbsolutePath(),
+                    "--file", clean.getAbsolutePath()}).build(), converter, predicate);
+            roots.handle();
+
+            assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+            assertEquals(2, roots.getMetrics().get(Counter.DISCOVERED));
+            assertEquals(2, roots.getMetrics().get(Counter.COMPLETED));
+        }
+
+        @Test
+        @DisplayName("converts files arriving while watching until stopped")
+        void watch() throws Exception {
+            final FileHandler watching = new FileHandler(new AppConfigBuilder(new String[]{"--watch", "--debounce", "100",
+                    "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+            final Thread run = new Thread(watching::handle);
+            run.start();
+            try {
+                final ID3v23Tag win1252 = new ID3v23Tag();
+                win1252.setField(FieldKey.TITLE, "ÀÁê");
+                final File arrived = Mp3Samples.write(new File(dir, "arrived.mp3.part"), win1252, 100, null);
+                Thread.sleep(200);
+                final File renamed = new File(dir, "arrived.mp3");
+                Files.move(arrived.toPath(), renamed.toPath());
+
+                final long deadline = System.currentTimeMillis() + 10_000;
+                while (watching.getMetrics().get(Counter.SAVED) == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                assertEquals("АБк", new TagReader().read(renamed).getTag().getFirst(FieldKey.TITLE));
+                assertEquals("ÀÁê", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+            } finally {
+                watching.stop();
+                run.join(10_000);
+            }
+            assertFalse(run.isAlive());
+        }
+
+        private int freePort() throws IOException {
+            try (ServerSocket free = new ServerSocket(0)) {
+                return free.getLocalPort();
+            }
+        }
+
+        /**
+         * @return lines the server answered, once it is up
+         */
+        private List<String> ask(int port, boolean succeeds, String... paths) throws Exception {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (true) {
+                try {
+                    assertEquals(succeeds, Client.run(port, Arrays.asList(paths), new PrintStream(out, true, "UTF-8")));
+                    return Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(50);
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("converts files sent by clients until stopped")
+        void serve() throws Exception {
+            final int port = freePort();
+            final FileHandler serving = new FileHandler(new AppConfigBuilder(new String[]{"--serve", String.valueOf(port)}).build(),
+                    converter, predicate);
+            final Thread run = new Thread(serving::handle);
+            run.start();
+            try {
+                final List<String> lines = ask(port, true, dirty.getPath(), clean.getPath());
+                assertEquals(2, lines.size());
+                assertTrue(lines.contains("converted\t" + dirty.getPath()), lines.toString());
+                assertTrue(lines.contains("clean\t" + clean.getPath()), lines.toString());
+                assertEquals("АБк", new TagReader().read(dirty).getTag().getFirst(FieldKey.TITLE));
+
+                final File empty = new File(dir, "empty");
+                assertTrue(empty.mkdir());
+                assertEquals(Arrays.asList("skipped\t" + empty.getPath()), ask(port, true, empty.getPath()));
+            } finally {
+                serving.stop();
+                run.join(10_000);
+            }
+            assertFalse(run.isAlive());
+        }
+
+        @Test
+        @DisplayName("answers clients of files a stage fails on, every time they ask")
+        void serveFailure() throws Exception {
+            final int port = freePort();
+            final FileHandler serving = spy(new FileHandler(new AppConfigBuilder(new String[]{"--serve", String.valueOf(port)}).build(),
+                    converter, predicate));
+            doThrow(new IllegalStateException("boom")).when(serving).save(any(MP3File.class));
+            final Thread run = new Thread(serving::handle);
+            run.start();
+            try {
+                assertEquals(Arrays.asList("failed\t" + dirty.getPath()), ask(port, false, dirty.getPath()));
+                assertEquals(Arrays.asList("failed\t" + dirty.getPath()), ask(port, false, dirty.getPath()));
+                assertEquals(2, serving.getMetrics().get(Counter.FAILED));
+            } finally {
+                serving.stop();
+                run.join(10_000);
+            }
+            assertFalse(run.isAlive());
+        }
+
+        @Test
+        @DisplayName("copies the tree converting the copies and leaving the originals as they are")
+        void copyTo() throws Exception {
+            final File sub = new File(dir, "sub");
+            assertTrue(sub.mkdir());
+            final File nested = new File(sub, "nested.mp3");
+            Files.copy(dirty.toPath(), nested.toPath());
+            final File untagged = Mp3Samples.write(new File(dir, "untagged.mp3"), null, 0, null);
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+            final byte[] cleanBytes = Files.readAllBytes(clean.toPath());
+            final File dest = Files.createTempDirectory(UUID.randomUUID().toString()).toFile();
+            try {
+                final FileHandler copying = new FileHandler(new AppConfigBuilder(new String[]{"--copy-to", new File(dest, "archive").getPath(),
+                        "--file", dir.getAbsolutePath()}).build(), converter, predicate);
+                copying.handle();
+
+                final File archive = new File(dest, "archive");
+                assertEquals("АБк", new TagReader().read(new File(archive, "dirty.mp3")).getTag().getFirst(FieldKey.TITLE));
+                assertEquals("АБк", new TagReader().read(new File(archive, "sub/nested.mp3")).getTag().getFirst(FieldKey.TITLE));
+                assertArrayEquals(cleanBytes, Files.readAllBytes(new File(archive, "clean.mp3").toPath()));
+                assertArrayEquals(Files.readAllBytes(untagged.toPath()), Files.readAllBytes(new File(archive, "untagged.mp3").toPath()));
+                assertArrayEquals(dirtyBytes, Files.readAllBytes(dirty.toPath()));
+                assertFalse(new File(dirty.getAbsolutePath() + "~").exists());
+                assertEquals(4, copying.getMetrics().get(Counter.SAVED));
+                assertEquals(4, copying.getMetrics().get(Counter.COMPLETED));
+                assertEquals(0, copying.getMetrics().get(Counter.FAILED));
+            } finally {
+                FileUtils.deleteDirectory(dest);
+            }
+        }
+
+        @Test
+        @DisplayName("restores files from full backups")
+        void fullBackupAndRestore() throws Exception {
+            final byte[] dirtyBytes = Files.readAllBytes(dirty.toPath());
+
+            handler.handle();
+            new FileHandler(new AppConfigBuilder(new String[]{"--restore", "--file", dir.getAbsolutePath()}).build(),
+                    converter, predicate).handle();
+
+            assertArrayEquals(dirtyBytes, Files.readAllBytes(dirty.toPath()));
+            assertFalse(new File(dirty.getAbsolutePath() + "~").exists());
+        }
+
     }
 
 }
\ No newline at end of file
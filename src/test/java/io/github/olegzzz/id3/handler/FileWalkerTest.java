@@ -0,0 +1,114 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("A file walker")
+class FileWalkerTest {
+
+    Path root;
+    FileWalker walker;
+
+    @BeforeEach
+    void setup() throws IOException {
+        root = Files.createTempDirectory(UUID.randomUUID().toString());
+        walker = new FileWalker("mp3");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    private File touch(String name) throws IOException {
+        final Path path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.createFile(path).toFile();
+    }
+
+    @Test
+    @DisplayName("finds mp3 files recursively")
+    void recursive() throws IOException {
+        final Set<File> expected = new HashSet<>(Arrays.asList(touch("a.mp3"), touch("b/c.mp3"), touch("b/d/e.mp3")));
+        touch("b/cover.jpg");
+        touch("b/d/e.mp3~");
+        Files.createDirectories(root.resolve("dir.mp3"));
+        try (Stream<File> files = walker.apply(root)) {
+            assertEquals(expected, files.collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    @DisplayName("returns every file once when split for parallel processing")
+    void parallel() throws IOException {
+        final int count = FileWalker.BATCH_SIZE * 3 + 7;
+        for (int i = 0; i < count; i++) {
+            touch(String.format("%d/%d.mp3", i % 5, i));
+        }
+        try (Stream<File> files = walker.apply(root)) {
+            assertEquals(count, files.parallel().distinct().count());
+        }
+    }
+
+    @Test
+    @DisplayName("walks several roots, taking mp3 files given as roots as they are")
+    void roots() throws IOException {
+        final File a = touch("a/a.mp3");
+        final File b = touch("b/b.mp3");
+        final File c = touch("c.mp3");
+        final File cover = touch("cover.jpg");
+        final List<Path> roots = Arrays.asList(root.resolve("a"), c.toPath(), cover.toPath(), root.resolve("absent"), root.resolve("b"));
+        try (Stream<File> files = walker.walk(roots.iterator())) {
+            assertEquals(Arrays.asList(a, c, b), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    @DisplayName("returns empty stream for an empty directory")
+    void empty() {
+        try (Stream<File> files = walker.apply(root)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A journal")
+class JournalTest {
+
+    Path dir;
+    Path journalFile;
+    File a;
+    File b;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory(UUID.randomUUID().toString());
+        journalFile = dir.resolve("run.journal");
+        a = dir.resolve("a.mp3").toFile();
+        b = dir.resolve("b\nc.mp3").toFile();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    @DisplayName("tells done and interrupted files of a resumed run")
+    void resume() throws IOException {
+        try (Journal journal = Journal.open(journalFile, false)) {
+            journal.begin(a);
+            journal.done(a);
+            journal.begin(b);
+        }
+        try (Journal journal = Journal.open(journalFile, true)) {
+            assertTrue(journal.isDone(a));
+            assertFalse(journal.isInterrupted(a));
+            assertFalse(journal.isDone(b));
+            assertTrue(journal.isInterrupted(b));
+            journal.done(b);
+        }
+        try (Journal journal = Journal.open(journalFile, true)) {
+            assertTrue(journal.isDone(b));
+            assertFalse(journal.isInterrupted(b));
+        }
+    }
+
+    @Test
+    @DisplayName("starts over unless resuming")
+    void fresh() throws IOException {
+        try (Journal journal = Journal.open(journalFile, false)) {
+            journal.done(a);
+        }
+        try (Journal journal = Journal.open(journalFile, false)) {
+            assertFalse(journal.isDone(a));
+        }
+        assertEquals(0, Files.size(journalFile));
+    }
+
+    @Test
+    @DisplayName("ignores a record torn by a crash")
+    void torn() throws IOException {
+        try (Journal journal = Journal.open(journalFile, false)) {
+            journal.done(a);
+        }
+        Files.write(journalFile, "D".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (Journal journal = Journal.open(journalFile, true)) {
+            assertTrue(journal.isDone(a));
+            assertFalse(journal.isDone(b));
+        }
+    }
+
+    @Test
+    @DisplayName("keeps every record begun concurrently")
+    void concurrent() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            files.add(dir.resolve(i + ".mp3").toFile());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (Journal journal = Journal.open(journalFile, false)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (File f : files) {
+                futures.add(executor.submit(() -> {
+                    journal.begin(f);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try (Journal journal = Journal.open(journalFile, true)) {
+            for (File f : files) {
+                assertTrue(journal.isInterrupted(f), f.getName());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("escapes line breaks in paths")
+    void escape() {
+        assertEquals("a\\nb\\\\c", Journal.escape("a\nb\\c"));
+        assertEquals("a\nb\\c", Journal.unescape(Journal.escape("a\nb\\c")));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A manifest")
+class ManifestTest {
+
+    Path dir;
+    Path file;
+    Path manifestFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory(UUID.randomUUID().toString());
+        file = Files.write(dir.resolve("a.mp3"), new byte[]{1, 2, 3});
+        manifestFile = dir.resolve("manifest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    @DisplayName("knows nothing about unrecorded files")
+    void unknown() throws IOException {
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            assertFalse(manifest.unchanged(file));
+            assertEquals(0, manifest.getSkipped());
+        }
+    }
+
+    @Test
+    @DisplayName("reports converted and clean files unchanged across runs")
+    void persistent() throws IOException {
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            manifest.record(file, Manifest.Outcome.CONVERTED, 42);
+        }
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            assertEquals(1, manifest.size());
+            assertTrue(manifest.unchanged(file));
+            assertEquals(1, manifest.getSkipped());
+        }
+    }
+
+    @Test
+    @DisplayName("reports modified files changed")
+    void modified() throws IOException {
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            manifest.record(file, Manifest.Outcome.CLEAN, 0);
+            Files.write(file, new byte[]{1, 2, 3, 4});
+            assertFalse(manifest.unchanged(file));
+        }
+    }
+
+    @Test
+    @DisplayName("retries failed files")
+    void failed() throws IOException {
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            manifest.record(file, Manifest.Outcome.FAILED, 0);
+            assertFalse(manifest.unchanged(file));
+            manifest.record(file, Manifest.Outcome.CLEAN, 0);
+            assertTrue(manifest.unchanged(file));
+            assertEquals(1, manifest.size());
+        }
+    }
+
+    @Test
+    @DisplayName("grows beyond its initial capacity")
+    void grows() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < Manifest.MIN_CAPACITY; i++) {
+            files.add(dir.resolve(i + ".mp3"));
+        }
+        Files.write(files.get(0), new byte[]{1});
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            for (Path f : files) {
+                Files.copy(files.get(0), f, StandardCopyOption.REPLACE_EXISTING);
+                manifest.record(f, Manifest.Outcome.CLEAN, 0);
+            }
+        }
+        assertTrue(Files.size(manifestFile) > Manifest.HEADER_SIZE + (long) Manifest.MIN_CAPACITY * Manifest.SLOT_SIZE);
+        try (Manifest manifest = Manifest.open(manifestFile)) {
+            assertEquals(Manifest.MIN_CAPACITY, manifest.size());
+            for (Path f : files) {
+                assertTrue(manifest.unchanged(f), f.toString());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("refuses to open other files")
+    void notManifest() throws IOException {
+        Files.write(manifestFile, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+        assertThrows(IOException.class, () -> Manifest.open(manifestFile));
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("An mp3 converter")
+class Mp3ConverterTest {
+
+    static final String TITLE = "ÀÁê";
+    static final int PADDING = 100;
+
+    File file;
+    Mp3Converter converter;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = File.createTempFile(UUID.randomUUID().toString(), ".mp3");
+        converter = new Mp3Converter();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+
+    private byte[] sample(String title) throws Exception {
+        final ID3v23Tag v2 = new ID3v23Tag();
+        v2.setField(FieldKey.TITLE, title);
+        final ID3v11Tag v1 = new ID3v11Tag();
+        v1.setField(FieldKey.TITLE, title);
+        v1.setField(FieldKey.ARTIST, title);
+        Mp3Samples.write(file, v2, PADDING, v1);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private byte[] convertFile() throws Exception {
+        final MP3File mp3 = new TagReader().read(file);
+        final TagConverter tagConverter = new TagConverter(new Win1252Converter(), new Win1252Predicate(), Collections.emptySet());
+        tagConverter.convert(mp3.getTag(), null);
+        new TagWriter().write(mp3);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private byte[] stream(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.convert(in, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    @DisplayName("converts a byte array the same way the file is converted in place")
+    void bytes() throws Exception {
+        final byte[] mp3 = sample(TITLE);
+        final byte[] converted = converter.convert(mp3);
+        assertNotSame(mp3, converted);
+        assertArrayEquals(convertFile(), converted);
+    }
+
+    @Test
+    @DisplayName("converts the remaining bytes of a buffer and leaves its position as is")
+    void buffer() throws Exception {
+        final byte[] mp3 = sample(TITLE);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(mp3.length + 3);
+        buffer.position(3);
+        buffer.put(mp3).position(3);
+        final ByteBuffer converted = converter.convert(buffer);
+        assertEquals(3, buffer.position());
+        final byte[] bytes = new byte[converted.remaining()];
+        converted.get(bytes);
+        assertArrayEquals(convertFile(), bytes);
+    }
+
+    @Test
+    @DisplayName("streams the same bytes as it converts in memory, even when read in small pieces")
+    void stream() throws Exception {
+        final byte[] mp3 = sample(TITLE);
+        final byte[] expected = converter.convert(mp3);
+        assertArrayEquals(expected, stream(new ByteArrayInputStream(mp3)));
+        assertArrayEquals(expected, stream(new FilterInputStream(new ByteArrayInputStream(mp3)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        }));
+    }
+
+    @Test
+    @DisplayName("passes audio larger than its buffer through as is")
+    void largeAudio() throws Exception {
+        final byte[] sample = sample(TITLE);
+        final byte[] v2 = Arrays.copyOf(sample, sample.length - Mp3Samples.FRAMES * Mp3Samples.FRAME_SIZE - TagReader.V1_SIZE);
+        final byte[] v1 = Arrays.copyOfRange(sample, sample.length - TagReader.V1_SIZE, sample.length);
+        final byte[] audio = new byte[Mp3Converter.BUFFER_SIZE * 2 + 17];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) i;
+        }
+        final ByteArrayOutputStream mp3 = new ByteArrayOutputStream();
+        mp3.write(v2);
+        mp3.write(audio);
+        mp3.write(v1);
+
+        final byte[] converted = stream(new ByteArrayInputStream(mp3.toByteArray()));
+        assertArrayEquals(converter.convert(mp3.toByteArray()), converted);
+        assertEquals(mp3.size(), converted.length);
+        assertArrayEquals(audio, Arrays.copyOfRange(converted, v2.length, v2.length + audio.length));
+    }
+
+    @Test
+    @DisplayName("leaves the ID3v1 tag as is when there is an ID3v2 tag")
+    void v1WithV2() throws Exception {
+        final byte[] mp3 = sample("foo");
+        final byte[] converted = new Mp3Converter(String::toUpperCase, s -> true, Collections.emptySet()).convert(mp3);
+        assertNotSame(mp3, converted);
+        assertArrayEquals(Arrays.copyOfRange(mp3, mp3.length - TagReader.V1_SIZE, mp3.length),
+                Arrays.copyOfRange(converted, converted.length - TagReader.V1_SIZE, converted.length));
+    }
+
+    @Test
+    @DisplayName("converts the ID3v1 tag when there is no ID3v2 tag")
+    void v1Only() throws Exception {
+        final ID3v11Tag v1 = new ID3v11Tag();
+        v1.setField(FieldKey.TITLE, "foo");
+        v1.setField(FieldKey.ARTIST, "bar");
+        Mp3Samples.write(file, null, 0, v1);
+        final byte[] mp3 = Files.readAllBytes(file.toPath());
+
+        final byte[] converted = new Mp3Converter(String::toUpperCase, s -> true, Collections.emptySet()).convert(mp3);
+        assertEquals(mp3.length, converted.length);
+        Files.write(file.toPath(), converted);
+        final MP3File mp3File = new TagReader().read(file);
+        assertEquals("FOO", mp3File.getID3v1Tag().getFirst(FieldKey.TITLE));
+        assertEquals("BAR", mp3File.getID3v1Tag().getFirst(FieldKey.ARTIST));
+    }
+
+    @Test
+    @DisplayName("leaves ID3v1 fields as they are when the converted values do not fit single bytes")
+    void v1Cyrillic() throws Exception {
+        final ID3v11Tag v1 = new ID3v11Tag();
+        v1.setField(FieldKey.TITLE, TITLE);
+        Mp3Samples.write(file, null, 0, v1);
+        final byte[] mp3 = Files.readAllBytes(file.toPath());
+        assertSame(mp3, converter.convert(mp3));
+        assertArrayEquals(mp3, stream(new ByteArrayInputStream(mp3)));
+    }
+
+    @Test
+    @DisplayName("passes ID3v2 tags larger than the maximum tag size through as is")
+    void oversizeTag() throws Exception {
+        final byte[] mp3 = sample(TITLE);
+        final Mp3Converter capped = new Mp3Converter(new Win1252Converter(), new Win1252Predicate(), Collections.emptySet(), PADDING);
+        assertSame(mp3, capped.convert(mp3));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(capped.convert(new ByteArrayInputStream(mp3), out));
+        assertArrayEquals(mp3, out.toByteArray());
+        assertThrows(IllegalArgumentException.class,
+                () -> new Mp3Converter(new Win1252Converter(), new Win1252Predicate(), Collections.emptySet(), -1));
+    }
+
+    @Test
+    @DisplayName("returns the input as is when there is nothing to convert")
+    void unchanged() throws Exception {
+        final byte[] mp3 = sample("Foo");
+        assertSame(mp3, converter.convert(mp3));
+        final ByteBuffer buffer = ByteBuffer.wrap(mp3);
+        assertSame(buffer, converter.convert(buffer));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(converter.convert(new ByteArrayInputStream(mp3), out));
+        assertArrayEquals(mp3, out.toByteArray());
+    }
+
+    @Test
+    @DisplayName("copies data without tags as is")
+    void noTags() throws Exception {
+        Mp3Samples.write(file, null, 0, null);
+        final byte[] mp3 = Files.readAllBytes(file.toPath());
+        assertSame(mp3, converter.convert(mp3));
+        assertArrayEquals(mp3, stream(new ByteArrayInputStream(mp3)));
+        final byte[] tiny = {'I', 'D', '3'};
+        assertArrayEquals(tiny, stream(new ByteArrayInputStream(tiny)));
+        assertSame(tiny, converter.convert(tiny));
+    }
+
+}
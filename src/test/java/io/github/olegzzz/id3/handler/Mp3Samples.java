@@ -0,0 +1,83 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v1Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+/**
+ * Builds small but valid mp3 files: an optional ID3v2 tag, a few silent MPEG-1 Layer III frames and an optional ID3v1 tag.
+ */
+final class Mp3Samples {
+
+    static final int FRAMES = 20;
+    // MPEG-1 Layer III, 128 kbit/s, 44.1 kHz, no padding: 144 * 128000 / 44100 = 417 bytes per frame
+    static final byte[] FRAME_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x64};
+    static final int FRAME_SIZE = 417;
+
+    private Mp3Samples() {
+    }
+
+    static byte[] tagBytes(AbstractID3v2Tag tag, int padding) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tag.write(Channels.newChannel(out));
+        final byte[] bytes = out.toByteArray();
+        final ByteBuffer padded = ByteBuffer.allocate(bytes.length + padding);
+        padded.put(bytes);
+        TagReader.putSyncSafe(padded, TagReader.SIZE_OFFSET, bytes.length + padding - TagReader.HEADER_SIZE);
+        return padded.array();
+    }
+
+    static byte[] audio() {
+        final byte[] audio = new byte[FRAMES * FRAME_SIZE];
+        for (int i = 0; i < FRAMES; i++) {
+            System.arraycopy(FRAME_HEADER, 0, audio, i * FRAME_SIZE, FRAME_HEADER.length);
+        }
+        return audio;
+    }
+
+    static File write(File file, AbstractID3v2Tag v2, int padding, ID3v1Tag v1) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (v2 != null) {
+            out.write(tagBytes(v2, padding));
+        }
+        out.write(audio());
+        Files.write(file.toPath(), out.toByteArray());
+        if (v1 != null) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                v1.write(raf);
+            }
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A path list")
+class PathListTest {
+
+    private static List<Path> read(String input, boolean nul) {
+        final List<Path> paths = new ArrayList<>();
+        new PathList(new StringReader(input), nul).forEachRemaining(paths::add);
+        return paths;
+    }
+
+    @Test
+    @DisplayName("reads one path per line skipping empty lines")
+    void lines() {
+        assertEquals(Arrays.asList(Paths.get("a b.mp3"), Paths.get("c/d.mp3"), Paths.get("e.mp3")),
+                read("a b.mp3\r\n\nc/d.mp3\ne.mp3", false));
+    }
+
+    @Test
+    @DisplayName("reads paths separated by NUL keeping line breaks")
+    void nul() {
+        assertEquals(Arrays.asList(Paths.get("a\nb.mp3"), Paths.get("c.mp3")), read("a\nb.mp3\0c.mp3\0", true));
+    }
+
+    @Test
+    @DisplayName("skips entries that are not valid paths")
+    void invalid() {
+        assertEquals(Arrays.asList(Paths.get("a.mp3"), Paths.get("c.mp3")), read("a.mp3\nb\0.mp3\nc.mp3\n", false));
+    }
+
+    @Test
+    @DisplayName("is empty for empty input")
+    void empty() {
+        final PathList list = new PathList(new StringReader(""), false);
+        assertFalse(list.hasNext());
+        assertThrows(NoSuchElementException.class, list::next);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.ExecutorType;
+import io.github.olegzzz.id3.config.Stage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("A pipeline")
+class PipelineTest {
+
+    static final int ITEMS = 500;
+    static final int QUEUE = 4;
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("passes every item through all stages")
+    void allStages(ExecutorType type) {
+        final Set<String> out = ConcurrentHashMap.newKeySet();
+        Pipeline.<Integer>of(type, QUEUE)
+                .thenApply(Stage.READ, 2, (i) -> Optional.of(i * 2))
+                .thenApply(Stage.CONVERT, 3, (i) -> Optional.of("v" + i))
+                .thenAccept(Stage.WRITE, 1, out::add)
+                .run(IntStream.range(0, ITEMS).boxed());
+        assertEquals(IntStream.range(0, ITEMS).mapToObj((i) -> "v" + i * 2).collect(Collectors.toSet()), out);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("drops items a stage returns empty for")
+    void filters(ExecutorType type) {
+        final AtomicInteger written = new AtomicInteger();
+        Pipeline.<Integer>of(type, QUEUE)
+                .thenApply(Stage.CONVERT, 2, (i) -> i % 3 == 0 ? Optional.of(i) : Optional.<Integer>empty())
+                .thenAccept(Stage.WRITE, 2, (i) -> written.incrementAndGet())
+                .run(IntStream.range(0, ITEMS).boxed());
+        assertEquals((ITEMS + 2) / 3, written.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("reports every item a stage processes to the timer")
+    void timer(ExecutorType type) {
+        final Map<Stage, LongAdder> timed = new ConcurrentHashMap<>();
+        Pipeline.<Integer>of(type, QUEUE, (stage, nanos) -> timed.computeIfAbsent(stage, (s) -> new LongAdder()).increment())
+                .thenApply(Stage.CONVERT, 2, (i) -> i % 2 == 0 ? Optional.of(i) : Optional.<Integer>empty())
+                .thenAccept(Stage.WRITE, 2, (i) -> { })
+                .run(IntStream.range(0, ITEMS).boxed());
+        assertEquals(ITEMS, timed.get(Stage.CONVERT).sum());
+        assertEquals(ITEMS / 2, timed.get(Stage.WRITE).sum());
+    }
+
+    @Test
+    @DisplayName("does not let the source run ahead of a slow stage")
+    void backpressure() {
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger consumed = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        Pipeline.<Integer>of(ExecutorType.FIXED, QUEUE)
+                .thenAccept(Stage.WRITE, 1, (i) -> {
+                    consumed.incrementAndGet();
+                    Thread.yield();
+                })
+                .run(IntStream.range(0, ITEMS).boxed().peek((i) ->
+                        maxAhead.accumulateAndGet(produced.incrementAndGet() - consumed.get(), Math::max)));
+        assertEquals(ITEMS, consumed.get());
+        // queue capacity plus the item being put, the one the dispatcher holds and the one handed to the executor
+        assertTrue(maxAhead.get() <= QUEUE + 3, () -> String.format("source was %d items ahead", maxAhead.get()));
+    }
+
+    @Test
+    @DisplayName("throws IllegalStateException when there are no stages")
+    void noStages() {
+        assertThrows(IllegalStateException.class, () -> Pipeline.<Integer>of(ExecutorType.FIXED, QUEUE).run(IntStream.range(0, 1).boxed()));
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.ExecutorType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("A processing engine")
+class ProcessingEngineTest {
+
+    static final int ITEMS = 200;
+    static final int LIMIT = 3;
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("processes every item")
+    void processesAll(ExecutorType type) {
+        final Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        try (ProcessingEngine engine = new ProcessingEngine(type, LIMIT)) {
+            engine.run(IntStream.range(0, ITEMS).boxed(), seen::add);
+        }
+        assertEquals(ITEMS, seen.size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("does not exceed the concurrency limit")
+    void respectsLimit(ExecutorType type) {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        try (ProcessingEngine engine = new ProcessingEngine(type, LIMIT)) {
+            engine.run(IntStream.range(0, ITEMS).boxed(), (i) -> {
+                max.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+            });
+        }
+        assertTrue(max.get() <= LIMIT, () -> String.format("%d tasks ran concurrently", max.get()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutorType.class)
+    @DisplayName("keeps going when a task fails")
+    void survivesFailures(ExecutorType type) {
+        final AtomicInteger done = new AtomicInteger();
+        try (ProcessingEngine engine = new ProcessingEngine(type, LIMIT)) {
+            engine.run(IntStream.range(0, ITEMS).boxed(), (i) -> {
+                if (i % 2 == 0) {
+                    throw new IllegalStateException("boom");
+                }
+                done.incrementAndGet();
+            });
+        }
+        assertEquals(ITEMS / 2, done.get());
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.Client;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A server")
+class ServerTest {
+
+    Path dir;
+    Server server;
+    Thread pipeline;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory(UUID.randomUUID().toString());
+        server = new Server(0, new FileWalker("mp3"));
+        pipeline = new Thread(() -> server.stream().forEach((f) ->
+                server.finished(f, f.getName().startsWith("clean") ? ChangeReport.Status.CLEAN : ChangeReport.Status.CONVERTED)));
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+        pipeline.join(10_000);
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private String send(List<String> paths) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Client.run(server.getPort(), paths, new PrintStream(out, true, "UTF-8"));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("answers for every file of the paths sent")
+    void answers() throws IOException {
+        final File a = Files.write(dir.resolve("a.mp3"), new byte[]{1}).toFile();
+        Files.createDirectories(dir.resolve("sub"));
+        final File clean = Files.write(dir.resolve("sub/clean.mp3"), new byte[]{1}).toFile();
+        final File absent = dir.resolve("absent.mp3").toFile();
+
+        final Set<String> lines = new HashSet<>(Arrays.asList(send(Arrays.asList(a.getPath(), dir.resolve("sub").toString(), absent.getPath())).split("\n")));
+
+        assertEquals(new HashSet<>(Arrays.asList("converted\t" + a.getPath(), "clean\t" + clean.getPath(), "failed\t" + absent.getPath())), lines);
+    }
+
+    @Test
+    @DisplayName("ends the stream and fails files asked for once closed")
+    void close() throws Exception {
+        final File a = Files.write(dir.resolve("a.mp3"), new byte[]{1}).toFile();
+        server.close();
+        pipeline.join(10_000);
+
+        assertFalse(pipeline.isAlive());
+        assertThrows(IOException.class, () -> send(Arrays.asList(a.getPath())));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import io.github.olegzzz.id3.config.FsyncPolicy;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A syncer")
+class SyncerTest {
+
+    Path dir;
+    List<Path> durable;
+    List<IOException> failed;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory(UUID.randomUUID().toString());
+        durable = new ArrayList<>();
+        failed = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private Path target(String name) throws IOException {
+        return Files.write(dir.resolve(name), new byte[]{1});
+    }
+
+    private Path staged(String name) throws IOException {
+        return Files.write(dir.resolve(name + TagWriter.TMP_SUFFIX), new byte[]{2, 2});
+    }
+
+    private void commit(Syncer syncer, Path staged, Path target) {
+        syncer.commit(staged, target, () -> durable.add(target), failed::add);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = FsyncPolicy.class, names = {"FILE", "OFF"})
+    @DisplayName("renames a staged file over the target at once")
+    void immediate(FsyncPolicy policy) throws IOException {
+        final Path target = target("a.mp3");
+        final Path staged = staged("a.mp3");
+        try (Syncer syncer = new Syncer(policy, 100, 60)) {
+            commit(syncer, staged, target);
+
+            assertFalse(Files.exists(staged));
+            assertEquals(2, Files.size(target));
+            assertEquals(1, durable.size());
+        }
+    }
+
+    @Test
+    @DisplayName("keeps the originals until a batch is full")
+    void batch() throws IOException {
+        final Path a = target("a.mp3");
+        final Path b = target("b.mp3");
+        final Path inPlace = target("c.mp3");
+        try (Syncer syncer = new Syncer(FsyncPolicy.BATCH, 3, 60)) {
+            commit(syncer, staged("a.mp3"), a);
+            commit(syncer, staged("b.mp3"), b);
+
+            assertEquals(1, Files.size(a));
+            assertEquals(1, Files.size(b));
+            assertTrue(durable.isEmpty());
+
+            commit(syncer, null, inPlace);
+
+            assertEquals(2, Files.size(a));
+            assertEquals(2, Files.size(b));
+            assertEquals(3, durable.size());
+        }
+    }
+
+    @Test
+    @DisplayName("syncs what is left of a batch when closed")
+    void close() throws IOException {
+        final Path a = target("a.mp3");
+        try (Syncer syncer = new Syncer(FsyncPolicy.BATCH, 100, 60)) {
+            commit(syncer, staged("a.mp3"), a);
+            assertTrue(durable.isEmpty());
+        }
+        assertEquals(2, Files.size(a));
+        assertEquals(1, durable.size());
+    }
+
+    @Test
+    @DisplayName("reports a file it cannot rename and drops the staged copy")
+    void failure() throws IOException {
+        final Path staged = staged("a.mp3");
+        final Path target = Files.createDirectories(dir.resolve("a.mp3")).resolve("b.mp3");
+        Files.write(target, new byte[]{1});
+        try (Syncer syncer = new Syncer(FsyncPolicy.FILE, 100, 60)) {
+            commit(syncer, staged, target.getParent());
+
+            assertEquals(1, failed.size());
+            assertTrue(durable.isEmpty());
+            assertFalse(Files.exists(staged));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A tag backup")
+class TagBackupTest {
+
+    File file;
+    TagBackup backup;
+    TagReader reader;
+    TagWriter writer;
+
+    @BeforeEach
+    void setup() throws Exception {
+        file = File.createTempFile(UUID.randomUUID().toString(), ".mp3");
+        final ID3v23Tag v2 = new ID3v23Tag();
+        v2.setField(FieldKey.TITLE, "ÀÁê");
+        final ID3v11Tag v1 = new ID3v11Tag();
+        v1.setField(FieldKey.TITLE, "Foo");
+        Mp3Samples.write(file, v2, 50, v1);
+        file.setLastModified(1_500_000_000_000L);
+        backup = new TagBackup();
+        reader = new TagReader();
+        writer = new TagWriter();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+        TagBackup.sidecar(file).delete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100})
+    @DisplayName("restores the original file whether the tag was patched in place or rewritten")
+    void restore(int repeat) throws Exception {
+        final byte[] original = Files.readAllBytes(file.toPath());
+        final MP3File mp3 = reader.read(file);
+        final File sidecar = backup.save(mp3);
+        assertTrue(sidecar.length() < original.length);
+
+        final StringBuilder title = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            title.append("АБк");
+        }
+        mp3.getTag().setField(FieldKey.TITLE, title.toString());
+        writer.write(mp3);
+        backup.seal(file);
+        assertTrue(backup.hasBackup(file));
+
+        backup.restore(file);
+
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        assertEquals(1_500_000_000_000L, file.lastModified());
+        assertFalse(backup.hasBackup(file));
+    }
+
+    @Test
+    @DisplayName("restores a file that was not written yet")
+    void unwritten() throws Exception {
+        final byte[] original = Files.readAllBytes(file.toPath());
+        backup.save(reader.read(file));
+        backup.restore(file);
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        assertFalse(backup.hasBackup(file));
+    }
+
+    @Test
+    @DisplayName("refuses to restore a file written after the backup without its new tags recorded")
+    void unsealed() throws Exception {
+        final MP3File mp3 = reader.read(file);
+        backup.save(mp3);
+        mp3.getTag().setField(FieldKey.TITLE, "АБк");
+        writer.write(mp3);
+        assertRefused();
+    }
+
+    @Test
+    @DisplayName("refuses to restore a file whose audio changed after it was written")
+    void changed() throws Exception {
+        final MP3File mp3 = reader.read(file);
+        backup.save(mp3);
+        mp3.getTag().setField(FieldKey.TITLE, "АБк");
+        writer.write(mp3);
+        backup.seal(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() + 1);
+        }
+        assertRefused();
+    }
+
+    private void assertRefused() throws IOException {
+        final byte[] current = Files.readAllBytes(file.toPath());
+        assertThrows(IOException.class, () -> backup.restore(file));
+        assertArrayEquals(current, Files.readAllBytes(file.toPath()));
+        assertTrue(backup.hasBackup(file));
+    }
+
+    @Test
+    @DisplayName("throws IOException when the backup is corrupted")
+    void corrupted() throws Exception {
+        final File sidecar = backup.save(reader.read(file));
+        try (RandomAccessFile raf = new RandomAccessFile(sidecar, "rw")) {
+            raf.seek(raf.length() - 1);
+            final int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+        assertThrows(IOException.class, () -> backup.restore(file));
+        assertTrue(backup.hasBackup(file));
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Frame;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.jaudiotagger.tag.id3.framebody.FrameBodyTXXX;
+import org.jaudiotagger.tag.id3.valuepair.TextEncoding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("A tag converter")
+class TagConverterTest {
+
+    static final String WIN1252 = "Ïåðâûé";
+    static final String UTF8 = "Первый";
+
+    TagConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        converter = new TagConverter(new Win1252Converter(), new Win1252Predicate(), Collections.emptySet());
+    }
+
+    @Test
+    @DisplayName("converts text frames, comments and user defined frames")
+    void frames() throws Exception {
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, WIN1252);
+        tag.setField(FieldKey.ALBUM, "Album");
+        tag.setField(FieldKey.COMMENT, WIN1252);
+        tag.setFrame(txxx(WIN1252, WIN1252));
+
+        assertEquals(3, converter.convert(tag, null));
+
+        final AbstractID3v2Tag read = reread(tag);
+        assertEquals(UTF8, read.getFirst(FieldKey.TITLE));
+        assertEquals("Album", read.getFirst(FieldKey.ALBUM));
+        assertEquals(UTF8, read.getFirst(FieldKey.COMMENT));
+        final FrameBodyTXXX body = (FrameBodyTXXX) read.getFirstField("TXXX").getBody();
+        assertEquals(UTF8, body.getDescription());
+        assertEquals(UTF8, body.getText());
+    }
+
+    @Test
+    @DisplayName("describes the changes")
+    void changes() throws Exception {
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, WIN1252);
+        tag.setField(FieldKey.ALBUM, "Album");
+        final List<FieldChange> changes = new ArrayList<>();
+
+        converter.convert(tag, changes);
+        assertEquals(1, changes.size());
+        assertEquals("TIT2: [" + WIN1252 + "] -> [" + UTF8 + "]", changes.get(0).toString());
+    }
+
+    @Test
+    @DisplayName("converts every value of a multi-value frame")
+    void multiValue() throws Exception {
+        final ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.ARTIST, WIN1252);
+        tag.addField(FieldKey.ARTIST, "Âòîðîé");
+
+        assertEquals(1, converter.convert(tag, null));
+        assertEquals(Arrays.asList(UTF8, "Второй"), reread(tag).getAll(FieldKey.ARTIST));
+    }
+
+    @Test
+    @DisplayName("converts only the allowed frames")
+    void allowlist() throws Exception {
+        converter = new TagConverter(new Win1252Converter(), new Win1252Predicate(), new HashSet<>(Collections.singletonList("TPE1")));
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, WIN1252);
+        tag.setField(FieldKey.ARTIST, WIN1252);
+
+        assertEquals(1, converter.convert(tag, null));
+        assertEquals(WIN1252, tag.getFirst(FieldKey.TITLE));
+        assertEquals(UTF8, tag.getFirst(FieldKey.ARTIST));
+    }
+
+    @Test
+    @DisplayName("matches ID3v2.2 frames by their ID3v2.4 ids")
+    void allowlistV22() throws Exception {
+        converter = new TagConverter(new Win1252Converter(), new Win1252Predicate(), new HashSet<>(Arrays.asList("TPE1", "COMM")));
+        final ID3v22Tag tag = new ID3v22Tag();
+        tag.setField(FieldKey.TITLE, WIN1252);
+        tag.setField(FieldKey.ARTIST, WIN1252);
+        tag.setField(FieldKey.COMMENT, WIN1252);
+
+        assertEquals(2, converter.convert(tag, null));
+        assertEquals(WIN1252, tag.getFirst(FieldKey.TITLE));
+        assertEquals(UTF8, tag.getFirst(FieldKey.ARTIST));
+        assertEquals(UTF8, tag.getFirst(FieldKey.COMMENT));
+    }
+
+    @Test
+    @DisplayName("converts ID3v1 fields")
+    void v1() throws Exception {
+        final Tag tag = new ID3v11Tag();
+        tag.setField(FieldKey.TITLE, WIN1252);
+        tag.setField(FieldKey.ARTIST, "Artist");
+
+        assertEquals(1, converter.convert(tag, null));
+        assertEquals(UTF8, tag.getFirst(FieldKey.TITLE));
+        assertEquals("Artist", tag.getFirst(FieldKey.ARTIST));
+    }
+
+    static ID3v23Frame txxx(String description, String text) {
+        final ID3v23Frame frame = new ID3v23Frame("TXXX");
+        frame.setBody(new FrameBodyTXXX(TextEncoding.ISO_8859_1, description, text));
+        return frame;
+    }
+
+    static AbstractID3v2Tag reread(AbstractID3v2Tag tag) throws Exception {
+        final ByteBuffer bytes = ByteBuffer.wrap(Mp3Samples.tagBytes(tag, 0));
+        return tag instanceof ID3v24Tag ? new ID3v24Tag(bytes, "") : new ID3v23Tag(bytes, "");
+    }
+
+}
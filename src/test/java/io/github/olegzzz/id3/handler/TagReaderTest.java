@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.TagNotFoundException;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A tag reader")
+class TagReaderTest {
+
+    static final String TITLE = "ÀÁê";
+    static final int PADDING = 100;
+
+    File file;
+    TagReader reader;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = File.createTempFile(UUID.randomUUID().toString(), ".mp3");
+        reader = new TagReader();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+
+    static AbstractID3v2Tag tag(int version) throws Exception {
+        final AbstractID3v2Tag tag = version == 2 ? new ID3v22Tag() : version == 3 ? new ID3v23Tag() : new ID3v24Tag();
+        tag.setField(FieldKey.TITLE, TITLE);
+        return tag;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 4})
+    @DisplayName("reads ID3v2 tags and locates the audio after the padding")
+    void v2(int version) throws Exception {
+        Mp3Samples.write(file, tag(version), PADDING, null);
+        final MP3File mp3 = reader.read(file);
+        assertEquals(TITLE, mp3.getTag().getFirst(FieldKey.TITLE));
+        assertEquals(version, mp3.getID3v2Tag().getMajorVersion());
+        assertEquals(file.length() - Mp3Samples.FRAMES * Mp3Samples.FRAME_SIZE, mp3.getMP3AudioHeader().getMp3StartByte());
+        assertNull(mp3.getID3v1Tag());
+    }
+
+    @Test
+    @DisplayName("reads ID3v1 tag when there is no ID3v2 tag")
+    void v1() throws Exception {
+        final ID3v11Tag v1 = new ID3v11Tag();
+        v1.setField(FieldKey.TITLE, TITLE);
+        Mp3Samples.write(file, null, 0, v1);
+        final MP3File mp3 = reader.read(file);
+        assertEquals(TITLE, mp3.getTag().getFirst(FieldKey.TITLE));
+        assertNull(mp3.getID3v2Tag());
+        assertEquals(0, mp3.getMP3AudioHeader().getMp3StartByte());
+    }
+
+    @Test
+    @DisplayName("commits changes back to the file")
+    void commit() throws Exception {
+        Mp3Samples.write(file, tag(3), PADDING, new ID3v11Tag());
+        final long length = file.length();
+        final MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, "Foo");
+        mp3.commit();
+        assertEquals(length, file.length());
+        assertEquals("Foo", reader.read(file).getTag().getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    @DisplayName("leaves an ID3v2 tag claiming more bytes than the file has to the whole file reader")
+    void truncated() throws Exception {
+        Mp3Samples.write(file, tag(3), PADDING, null);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(TagReader.SIZE_OFFSET);
+            raf.write(new byte[]{0x7F, 0x7F, 0x7F, 0x7F});
+        }
+        // which finds no audio behind it
+        assertThrows(InvalidAudioFrameException.class, () -> reader.read(file));
+    }
+
+    @Test
+    @DisplayName("throws TagNotFoundException when the file has no tags")
+    void noTags() throws IOException {
+        Mp3Samples.write(file, null, 0, null);
+        assertThrows(TagNotFoundException.class, () -> reader.read(file));
+    }
+
+}
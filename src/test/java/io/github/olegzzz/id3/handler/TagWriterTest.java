@@ -0,0 +1,172 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.jaudiotagger.audio.mp3.MP3File;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A tag writer")
+class TagWriterTest {
+
+    File file;
+    TagReader reader;
+    TagWriter writer;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = File.createTempFile(UUID.randomUUID().toString(), ".mp3");
+        reader = new TagReader();
+        writer = new TagWriter();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+
+    private static String repeat(String s, int times) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private byte[] audio() throws Exception {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final int start = (int) reader.read(file).getMP3AudioHeader().getMp3StartByte();
+        return Arrays.copyOfRange(bytes, start, start + Mp3Samples.FRAMES * Mp3Samples.FRAME_SIZE);
+    }
+
+    @Test
+    @DisplayName("patches the tag in place when it fits into the padding")
+    void inPlace() throws Exception {
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, "ÀÁê");
+        Mp3Samples.write(file, tag, 200, null);
+        final long length = file.length();
+
+        final MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, "АБк");
+        assertTrue(writer.write(mp3));
+
+        assertEquals(length, file.length());
+        assertEquals("АБк", reader.read(file).getTag().getFirst(FieldKey.TITLE));
+        assertArrayEquals(Mp3Samples.audio(), audio());
+    }
+
+    @Test
+    @DisplayName("rewrites the file when the tag outgrows the padding")
+    void rewrite() throws Exception {
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, "ÀÁê");
+        Mp3Samples.write(file, tag, 0, null);
+        final long length = file.length();
+
+        final MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, repeat("АБк", 100));
+        assertFalse(writer.write(mp3));
+
+        assertTrue(file.length() > length);
+        assertEquals(repeat("АБк", 100), reader.read(file).getTag().getFirst(FieldKey.TITLE));
+        assertArrayEquals(Mp3Samples.audio(), audio());
+    }
+
+    @Test
+    @DisplayName("stages new content next to the file leaving the file as is")
+    void stage() throws Exception {
+        final ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, "ÀÁê");
+        Mp3Samples.write(file, tag, 200, null);
+        final byte[] original = Files.readAllBytes(file.toPath());
+        final MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, "АБк");
+
+        final Path staged = writer.stage(mp3, Throttle.UNLIMITED);
+        try {
+            assertEquals(file.getAbsoluteFile().getParentFile().toPath(), staged.getParent());
+            assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+            assertEquals("АБк", reader.read(staged.toFile()).getTag().getFirst(FieldKey.TITLE));
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Test
+    @DisplayName("writes ID3v1 tag in place")
+    void v1() throws Exception {
+        final ID3v11Tag tag = new ID3v11Tag();
+        tag.setField(FieldKey.TITLE, "Foo");
+        Mp3Samples.write(file, null, 0, tag);
+        final long length = file.length();
+
+        final MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, "Bar");
+        assertTrue(writer.write(mp3));
+
+        assertEquals(length, file.length());
+        assertEquals("Bar", reader.read(file).getTag().getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    @DisplayName("leaves ID3v1 fields that cannot hold the new value as they are, in place or staged")
+    void v1Cyrillic() throws Exception {
+        final ID3v11Tag tag = new ID3v11Tag();
+        tag.setField(FieldKey.TITLE, "ÀÁê");
+        tag.setField(FieldKey.ARTIST, "Foo");
+        Mp3Samples.write(file, null, 0, tag);
+
+        MP3File mp3 = reader.read(file);
+        mp3.getTag().setField(FieldKey.TITLE, "АБк");
+        mp3.getTag().setField(FieldKey.ARTIST, "Bar");
+        final Path staged = writer.stage(mp3, Throttle.UNLIMITED);
+        try {
+            assertEquals("ÀÁê", reader.read(staged.toFile()).getTag().getFirst(FieldKey.TITLE));
+            assertEquals("Bar", reader.read(staged.toFile()).getTag().getFirst(FieldKey.ARTIST));
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+
+        assertTrue(writer.patch(mp3));
+        mp3 = reader.read(file);
+        assertEquals("ÀÁê", mp3.getTag().getFirst(FieldKey.TITLE));
+        assertEquals("Bar", mp3.getTag().getFirst(FieldKey.ARTIST));
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A throttle")
+class ThrottleTest {
+
+    Path control;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        control = Files.createTempFile("throttle", ".properties");
+        Files.delete(control);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(control);
+    }
+
+    private void write(String limits, long modified) throws IOException {
+        Files.write(control, limits.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(control, FileTime.fromMillis(modified));
+    }
+
+    @Test
+    @DisplayName("lets a second's worth through at once and then keeps to the rate")
+    void rate() {
+        try (Throttle throttle = new Throttle(0, 0, 20, 0, null)) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < 30; i++) {
+                throttle.file();
+            }
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(millis >= 400, millis + " ms");
+            assertTrue(millis < 5000, millis + " ms");
+        }
+    }
+
+    @Test
+    @DisplayName("waits for a payment larger than the bucket to be paid off")
+    void debt() {
+        try (Throttle throttle = new Throttle(1, 0, 0, 0, null)) {
+            final long start = System.nanoTime();
+            throttle.read(1024 * 1024 + 512 * 1024);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(millis >= 400, millis + " ms");
+        }
+    }
+
+    @Test
+    @DisplayName("pays for a transfer chunk by chunk while the bytes move")
+    void transfer() throws IOException {
+        final Path file = Files.createTempFile("throttle", ".mp3");
+        try (Throttle throttle = new Throttle(0, 1, 0, 0, null);
+             FileChannel in = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            final byte[] bytes = new byte[Throttle.CHUNK_SIZE * 2 + 17];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            in.write(ByteBuffer.wrap(bytes));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final long[] secondChunk = new long[1];
+            final long start = System.nanoTime();
+            throttle.transfer(in, 0, bytes.length, new WritableByteChannel() {
+                private final WritableByteChannel channel = Channels.newChannel(out);
+
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    if (out.size() >= Throttle.CHUNK_SIZE && secondChunk[0] == 0) {
+                        secondChunk[0] = System.nanoTime();
+                    }
+                    return channel.write(src);
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            final long millis = TimeUnit.NANOSECONDS.toMillis(secondChunk[0] - start);
+            assertTrue(millis >= 800, millis + " ms");
+            assertArrayEquals(bytes, out.toByteArray());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("does not wait without limits")
+    void unlimited() {
+        try (Throttle throttle = new Throttle(0, 0, 0, 0, null)) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                throttle.file();
+                throttle.read(Long.MAX_VALUE / 2);
+                throttle.write(Long.MAX_VALUE / 2);
+                throttle.open().close();
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        }
+    }
+
+    @Test
+    @DisplayName("keeps files open at once to the limit")
+    void maxOpen() throws Exception {
+        try (Throttle throttle = new Throttle(0, 0, 0, 1, null)) {
+            final CountDownLatch opened = new CountDownLatch(1);
+            final Thread second;
+            try (Throttle.Permit ignored = throttle.open()) {
+                second = new Thread(() -> {
+                    try (Throttle.Permit p = throttle.open()) {
+                        opened.countDown();
+                    }
+                });
+                second.start();
+                assertFalse(opened.await(200, TimeUnit.MILLISECONDS));
+            }
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            second.join();
+        }
+    }
+
+    @Test
+    @DisplayName("takes limits from the control file while it exists")
+    void control() throws Exception {
+        write("max-open=2\n", 1_000_000);
+        try (Throttle throttle = new Throttle(0, 0, 0, 5, control.toFile())) {
+            assertEquals(2, throttle.getMaxOpen());
+
+            write("max-open=3\nread-rate=10\n", 2_000_000);
+            throttle.reload();
+            assertEquals(3, throttle.getMaxOpen());
+
+            write("max-open=-1\n", 3_000_000);
+            throttle.reload();
+            assertEquals(3, throttle.getMaxOpen());
+
+            Files.delete(control);
+            throttle.reload();
+            assertEquals(5, throttle.getMaxOpen());
+        }
+    }
+
+}
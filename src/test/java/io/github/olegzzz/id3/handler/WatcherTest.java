@@ -0,0 +1,102 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.handler;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A watcher")
+class WatcherTest {
+
+    Path root;
+    Watcher watcher;
+    BlockingQueue<File> files;
+    CountDownLatch ended;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createTempDirectory(UUID.randomUUID().toString());
+        watcher = new Watcher(Collections.singletonList(root), "mp3", 200);
+        files = new LinkedBlockingQueue<>();
+        ended = new CountDownLatch(1);
+        final Thread consumer = new Thread(() -> {
+            watcher.stream().forEach(files::add);
+            ended.countDown();
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watcher.close();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    @DisplayName("streams new mp3 files once they stop changing")
+    void created() throws Exception {
+        Files.write(root.resolve("cover.jpg"), new byte[]{1});
+        final Path mp3 = Files.write(root.resolve("a.mp3"), new byte[]{1});
+
+        assertEquals(mp3.toFile(), files.poll(10, TimeUnit.SECONDS));
+        Thread.sleep(500);
+        assertTrue(files.isEmpty());
+    }
+
+    @Test
+    @DisplayName("watches directories created after it started")
+    void newDirectory() throws Exception {
+        final Path dir = Files.createDirectories(root.resolve("a/b"));
+        final Path first = Files.write(dir.resolve("first.mp3"), new byte[]{1});
+        assertEquals(first.toFile(), files.poll(10, TimeUnit.SECONDS));
+
+        final Path second = Files.write(dir.resolve("second.mp3"), new byte[]{1});
+        assertEquals(second.toFile(), files.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("ends the stream when closed")
+    void close() throws Exception {
+        watcher.close();
+
+        assertTrue(ended.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @DisplayName("A converter")
 class Win1252ConverterTest {
@@ -62,6 +63,19 @@ class Win1252ConverterTest {
         assertEquals(expected, converter.apply(original));
     }
 
+    @Test
+    @DisplayName("returns the same instance if no win1252")
+    void sameInstance() {
+        String original = "Foo Фу";
+        assertSame(original, converter.apply(original));
+    }
 
+    @Test
+    @DisplayName("keeps characters outside of the basic multilingual plane")
+    void surrogates() {
+        String original = "À\uD83C\uDFB5Á";
+        String expected = "А\uD83C\uDFB5Б";
+        assertEquals(expected, converter.apply(original));
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A latency histogram")
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("maps every value into a bucket whose upper bound is close above it")
+    void buckets() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1000, 123_456_789, Long.MAX_VALUE}) {
+            final long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(upper >= value, value + " <= " + upper);
+            assertTrue(upper - value <= value / LatencyHistogram.SUB_BUCKETS, value + " ~ " + upper);
+        }
+    }
+
+    @Test
+    @DisplayName("returns zero quantiles when empty")
+    void empty() {
+        assertEquals(0, new LatencyHistogram().quantileNanos(0.99));
+    }
+
+    @Test
+    @DisplayName("estimates quantiles")
+    void quantiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500_000L, histogram.getSumNanos());
+        assertEquals(500_000, histogram.quantileNanos(0.5), 500_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990_000, histogram.quantileNanos(0.99), 990_000 / LatencyHistogram.SUB_BUCKETS);
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A metrics reporter")
+class MetricsReporterTest {
+
+    @Test
+    @DisplayName("registers an MBean while open")
+    void mbean() throws Exception {
+        final Metrics metrics = new Metrics();
+        metrics.increment(Counter.READ);
+        final ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        try (MetricsReporter ignored = new MetricsReporter(metrics, null, 1)) {
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Counters"));
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    @DisplayName("writes the metrics file when closed")
+    void file() throws Exception {
+        final File file = File.createTempFile("metrics", ".prom");
+        try {
+            final Metrics metrics = new Metrics();
+            try (MetricsReporter ignored = new MetricsReporter(metrics, file, 3600)) {
+                metrics.increment(Counter.FAILED);
+            }
+            final String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertEquals(metrics.prometheus(), text);
+            assertTrue(text.contains("id3_files_total{event=\"failed\"} 1"));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import io.github.olegzzz.id3.config.Stage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Metrics")
+class MetricsTest {
+
+    Metrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new Metrics();
+        metrics.increment(Counter.DISCOVERED);
+        metrics.increment(Counter.DISCOVERED);
+        metrics.increment(Counter.SAVED);
+        metrics.add(Counter.BYTES_WRITTEN, 4096);
+        metrics.record(Stage.READ, 2_000_000);
+    }
+
+    @Test
+    @DisplayName("count events")
+    void counters() {
+        assertEquals(2, metrics.get(Counter.DISCOVERED));
+        assertEquals(Long.valueOf(1), metrics.getCounters().get("saved"));
+        assertEquals(Long.valueOf(0), metrics.getCounters().get("failed"));
+        assertEquals(1, metrics.latency(Stage.READ).getCount());
+        assertEquals(2.0, metrics.getLatencyP99Millis().get("read"), 2.0 / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    @DisplayName("are formatted for Prometheus")
+    void prometheus() {
+        final String text = metrics.prometheus();
+        assertTrue(text.contains("id3_files_total{event=\"discovered\"} 2\n"), text);
+        assertTrue(text.contains("id3_bytes_written_total 4096\n"), text);
+        assertTrue(text.contains("id3_stage_latency_seconds_count{stage=\"read\"} 1\n"), text);
+        assertTrue(text.contains("id3_stage_latency_seconds_count{stage=\"write\"} 0\n"), text);
+        assertFalse(text.contains("\r"));
+    }
+
+    @Test
+    @DisplayName("are summarized")
+    void summary() {
+        final String summary = metrics.summary();
+        assertTrue(summary.startsWith("discovered 2, read 0"), summary);
+        assertTrue(summary.contains("read: 1 files"), summary);
+    }
+
+}
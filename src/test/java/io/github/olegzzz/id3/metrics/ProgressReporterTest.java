@@ -0,0 +1,65 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Oleg Zenchenko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.olegzzz.id3.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("A progress reporter")
+class ProgressReporterTest {
+
+    @Test
+    @DisplayName("reports completed files, rates and time left")
+    void report() {
+        final Metrics metrics = new Metrics();
+        try (ProgressReporter progress = new ProgressReporter(metrics, 3600)) {
+            final long start = System.nanoTime();
+            metrics.add(Counter.DISCOVERED, 100);
+            metrics.add(Counter.COMPLETED, 20);
+            metrics.add(Counter.BYTES_READ, 2 * 1024 * 1024);
+
+            final String first = progress.report(start + TimeUnit.SECONDS.toNanos(2));
+            assertTrue(first.startsWith("Progress: 20/100+ files (20.0%)"), first);
+            assertTrue(first.contains("MB/s"), first);
+
+            progress.discoveryDone();
+            metrics.add(Counter.COMPLETED, 80);
+            final String last = progress.report(start + TimeUnit.SECONDS.toNanos(4));
+            assertTrue(last.startsWith("Progress: 100/100 files (100.0%), 40.0 files/s, 0.00 MB/s, ETA 0:00:00"), last);
+        }
+    }
+
+    @Test
+    @DisplayName("does not estimate time left before anything is completed")
+    void unknown() {
+        try (ProgressReporter progress = new ProgressReporter(new Metrics(), 3600)) {
+            assertTrue(progress.report(System.nanoTime()).endsWith("ETA unknown"));
+        }
+    }
+
+}